@@ -0,0 +1,116 @@
+package boxshogi;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the rule checks, run on the final position of test cases.
+ *
+ * Each position is reached by replaying the test case in file mode, so
+ * doubleCheck and manyWaysOutOfCheck leave the side to move in check and
+ * tieGame leaves a quiet position after 400 moves. Run with "-prof gc" to
+ * see the allocation rate next to the latency.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RulesEngineBenchmark {
+
+    @Param({ "doubleCheck", "manyWaysOutOfCheck", "tieGame" })
+    public String position;
+
+    private String path;
+    private BoxShogi game;
+    private Board board;
+    private boolean lowerTurn;
+
+    @Setup
+    public void setUp() throws Exception {
+        path = findTestCase(position);
+        game = new BoxShogi(Utils.parseTestCase(path), new PrintStream(OutputStream.nullOutputStream()));
+        game.runGameInFileMode();
+        board = game.getGameBoard();
+        lowerTurn = board.getLowerTurn();
+    }
+
+    @Benchmark
+    public boolean examineIsDriveInCheck() {
+        return game.examineIsDriveInCheck(true);
+    }
+
+    @Benchmark
+    public void findAvailableMoves() {
+        game.findAvailableMoves();
+    }
+
+    @Benchmark
+    public void checkMoveValid(Blackhole blackhole) {
+        for (int from = 0; from < Bitboards.SQUARE_COUNT; from++) {
+            Piece piece = board.getPiece(from);
+            if (piece == null || piece.getIsLower() != lowerTurn) {
+                continue;
+            }
+            for (int to = 0; to < Bitboards.SQUARE_COUNT; to++) {
+                blackhole.consume(game.checkMoveValid(from, to, lowerTurn, false));
+            }
+        }
+    }
+
+    @Benchmark
+    public void checkMoveFollowBasicRule(Blackhole blackhole) {
+        for (int sq = 0; sq < Bitboards.SQUARE_COUNT; sq++) {
+            Piece piece = board.getPiece(sq);
+            if (piece == null) {
+                continue;
+            }
+            for (int dCol = -4; dCol <= 4; dCol++) {
+                for (int dRow = -4; dRow <= 4; dRow++) {
+                    blackhole.consume(piece.checkMoveFollowBasicRule(dCol, dRow));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public String boardToString() {
+        return board.toString();
+    }
+
+    @Benchmark
+    public Object parseTestCase() throws Exception {
+        return Utils.parseTestCase(path);
+    }
+
+    /**
+     * Function that finds a test case from the repository root or the benchmarks directory.
+     *
+     * @param name the test case name without extension
+     * @return the path of the .in file
+     */
+    private static String findTestCase(String name) {
+        String directory = System.getProperty("boxshogi.testCases", "test_cases");
+        File file = new File(directory, name + ".in");
+        if (!file.exists()) {
+            file = new File(new File("..", directory), name + ".in");
+        }
+        return file.getPath();
+    }
+}
@@ -0,0 +1,256 @@
+package boxshogi;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Computer player searching with iterative deepening negamax alpha-beta.
+ *
+ * Every completed depth prints a line with the score, the node count and the
+ * principal variation. The search stops at the move time, the node budget or
+ * the maximum depth, whichever comes first, and plays the best move of the
+ * deepest completed iteration.
+ *
+ * With more than one thread the search is Lazy SMP: helper threads search the
+ * same position on their own boards, half of them one ply deeper, and only
+ * share what they find through the transposition table. The node count and
+ * the node budget cover every thread. After each move a line gives the
+ * occupancy, hit rate and eviction rate of the table, from the counts of
+ * every thread added up once they have stopped.
+ *
+ * When a tablebase is set and holds the position, the engine plays the move of
+ * the table instead of searching, unless the mate it gives is longer than the
+ * moves left before the game is a tie: the table does not know the move limit.
+ *
+ * Positions are scored with the default weights of Evaluation unless others
+ * are set, so weights loaded from a file can be tried without recompiling.
+ */
+public class AlphaBetaEngine implements ComputerPlayer {
+
+    public static final long DEFAULT_HASH_MEGABYTES = 16;
+
+    private final long moveTimeMillis;
+    private final long maxNodes;
+    private final int maxDepth;
+    private final int threads;
+    private final TranspositionTable table;
+    private final ExecutorService helpers;
+    private Tablebase tablebase;
+    private Evaluation evaluation = Evaluation.DEFAULT;
+
+    /**
+     * Constructor for a single threaded engine.
+     *
+     * @param moveTimeMillis time budget per move, 0 for no time limit
+     * @param maxNodes       node budget per move, 0 for no node limit
+     * @param maxDepth       deepest iteration to search
+     */
+    public AlphaBetaEngine(long moveTimeMillis, long maxNodes, int maxDepth) {
+        this(moveTimeMillis, maxNodes, maxDepth, 1);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param moveTimeMillis time budget per move, 0 for no time limit
+     * @param maxNodes       node budget per move, 0 for no node limit
+     * @param maxDepth       deepest iteration to search
+     * @param threads        number of threads searching each move
+     */
+    public AlphaBetaEngine(long moveTimeMillis, long maxNodes, int maxDepth, int threads) {
+        this(moveTimeMillis, maxNodes, maxDepth, threads, DEFAULT_HASH_MEGABYTES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param moveTimeMillis time budget per move, 0 for no time limit
+     * @param maxNodes       node budget per move, 0 for no node limit
+     * @param maxDepth       deepest iteration to search
+     * @param threads        number of threads searching each move
+     * @param hashMegabytes  size of the transposition table
+     */
+    public AlphaBetaEngine(long moveTimeMillis, long maxNodes, int maxDepth, int threads, long hashMegabytes) {
+        this.moveTimeMillis = moveTimeMillis;
+        this.maxNodes = maxNodes;
+        this.maxDepth = Math.min(maxDepth, Searcher.MAX_PLY);
+        this.threads = Math.max(threads, 1);
+        this.table = new TranspositionTable(hashMegabytes);
+        this.helpers = this.threads > 1 ? Executors.newFixedThreadPool(this.threads - 1, runnable -> {
+            Thread thread = new Thread(runnable, "search-helper");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Function that sets the tablebase to play from when it holds the position.
+     *
+     * @param tablebase the table, or null for none
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Function that sets the weights positions are scored with.
+     *
+     * @param evaluation the weights
+     */
+    public void setEvaluation(Evaluation evaluation) {
+        this.evaluation = evaluation;
+    }
+
+    /**
+     * Function that copies the position for a searcher, scored with the weights of the engine.
+     *
+     * @param board the position
+     * @return an independent board
+     */
+    private Board searchBoard(Board board) {
+        Board copy = board.copy();
+        copy.setEvaluation(evaluation);
+        return copy;
+    }
+
+    @Override
+    public int selectMove(Board board, int pliesLeft, PrintStream out) {
+        long start = System.nanoTime();
+        if (tablebase != null) {
+            int move = probeTablebase(board, pliesLeft, out);
+            if (move != Move.NONE) {
+                return move;
+            }
+        }
+        table.newSearch();
+        long deadline = moveTimeMillis > 0 ? start + moveTimeMillis * 1000000L : Long.MAX_VALUE;
+        SearchControl control = new SearchControl(deadline, maxNodes > 0 ? maxNodes : Long.MAX_VALUE);
+        Searcher searcher = new Searcher(searchBoard(board), pliesLeft, control, table, true);
+
+        List<Searcher> helperSearchers = new ArrayList<>();
+        List<Future<?>> helperResults = new ArrayList<>();
+        for (int i = 1; i < threads; i++) {
+            Searcher helper = new Searcher(searchBoard(board), pliesLeft, control, table, false);
+            helperSearchers.add(helper);
+            int firstDepth = 1 + (i & 1);
+            helperResults.add(helpers.submit(() -> runHelper(helper, firstDepth, control)));
+        }
+
+        int bestMove = Move.NONE;
+        try {
+            for (int depth = 1; depth <= maxDepth; depth++) {
+                int score = searcher.searchRoot(depth);
+                if (searcher.isAborted()) {
+                    break;
+                }
+                bestMove = searcher.getBestMove();
+                if (bestMove == Move.NONE) {
+                    break;
+                }
+                printInfo(out, depth, score, control.getNodes() + searcher.getUnreportedNodes(), start,
+                        searcher.getPrincipalVariation());
+                if (Math.abs(score) >= Searcher.MATE - Searcher.MAX_PLY) {
+                    break;
+                }
+            }
+        } finally {
+            control.stop();
+            waitFor(helperResults);
+        }
+        TranspositionTable.Stats tableStats = new TranspositionTable.Stats();
+        tableStats.add(searcher.getTableStats());
+        for (Searcher helper : helperSearchers) {
+            tableStats.add(helper.getTableStats());
+        }
+        StringBuilder stats = new StringBuilder();
+        table.appendStats(stats, tableStats);
+        out.println(stats);
+        return bestMove;
+    }
+
+    /**
+     * Function that plays the move of the tablebase, if it holds the position
+     * and its mate ends before the move limit.
+     *
+     * @param board     the position
+     * @param pliesLeft how many moves can still be played before the game is a tie
+     * @param out       where to print the result of the table
+     * @return the move, or Move.NONE if the table does not settle the position
+     */
+    private int probeTablebase(Board board, int pliesLeft, PrintStream out) {
+        int score = tablebase.probe(board);
+        if (score == Tablebase.NOT_FOUND || (score != 0 && Searcher.MATE - Math.abs(score) > pliesLeft)) {
+            return Move.NONE;
+        }
+        int move = tablebase.bestMove(board, new int[MoveGenerator.MAX_MOVES]);
+        if (move != Move.NONE) {
+            String result = score == 0 ? "draw"
+                    : score > 0 ? "mate " + (Searcher.MATE - score + 1) / 2 : "mate -" + (Searcher.MATE + score) / 2;
+            out.println("tablebase " + tablebase.getMaterial() + " score " + result + " pv " + Move.toString(move));
+        }
+        return move;
+    }
+
+    /**
+     * Function run by a helper thread: deepen until the main thread stops.
+     *
+     * @param helper     the searcher of the thread
+     * @param firstDepth the depth to start from
+     * @param control    the shared stop signal
+     */
+    private void runHelper(Searcher helper, int firstDepth, SearchControl control) {
+        for (int depth = firstDepth; depth <= maxDepth && !control.isStopped(); depth++) {
+            helper.searchRoot(depth);
+        }
+    }
+
+    private static void waitFor(List<Future<?>> results) {
+        for (Future<?> result : results) {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Function that prints the result of one iteration.
+     *
+     * @param out   where to print
+     * @param depth the depth completed
+     * @param score the score of the root
+     * @param nodes nodes searched so far
+     * @param start System.nanoTime() when the search started
+     * @param pv    the principal variation
+     */
+    static void printInfo(PrintStream out, int depth, int score, long nodes, long start, String pv) {
+        long elapsed = Math.max(System.nanoTime() - start, 1);
+        out.println("depth " + depth + " score " + scoreToString(score) + " nodes " + nodes
+                + " nps " + (long) (nodes * 1e9 / elapsed) + " time " + (elapsed / 1000000) + " pv " + pv);
+    }
+
+    /**
+     * Function that writes a score, mates as the number of moves of the winner.
+     *
+     * @param score a search score
+     * @return a String like "35" or "mate 3" or "mate -2"
+     */
+    static String scoreToString(int score) {
+        if (score >= Searcher.MATE - Searcher.MAX_PLY) {
+            return "mate " + (Searcher.MATE - score + 1) / 2;
+        }
+        if (score <= -Searcher.MATE + Searcher.MAX_PLY) {
+            return "mate -" + (Searcher.MATE + score) / 2;
+        }
+        return Integer.toString(score);
+    }
+}
@@ -0,0 +1,194 @@
+package boxshogi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class that runs every test case of a directory in file mode inside one JVM.
+ *
+ * The games run concurrently on a thread pool, each streaming its moves from
+ * a GameFile and printing into its own buffer, which is then compared with
+ * the .out file next to the .in file.
+ * Like the autograder, the comparison ignores whitespace at the end of lines
+ * and blank lines at the end of the output.
+ */
+public class BatchRunner {
+
+    private final File directory;
+    private final int threads;
+
+    /**
+     * Constructor.
+     *
+     * @param directory the directory holding the .in and .out files
+     * @param threads   number of games to run at once
+     */
+    public BatchRunner(File directory, int threads) {
+        this.directory = directory;
+        this.threads = Math.max(threads, 1);
+    }
+
+    /**
+     * Function that runs every test case and prints one line per case and a summary.
+     *
+     * @param out where to print the results
+     * @return true if every test case passed
+     * @throws IOException If the directory cannot be listed, IOException would be triggerd.
+     */
+    public boolean run(PrintStream out) throws IOException {
+        File[] inputs = directory.listFiles((dir, name) -> name.endsWith(".in"));
+        if (inputs == null) {
+            throw new IOException("Cannot list " + directory);
+        }
+        Arrays.sort(inputs);
+        long start = System.nanoTime();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> results = new ArrayList<>();
+        try {
+            for (File input : inputs) {
+                results.add(pool.submit(() -> runTestCase(input)));
+            }
+
+            int passed = 0;
+            long gameNanos = 0;
+            for (Future<Result> future : results) {
+                Result result = getResult(future);
+                out.println((result.passed ? "PASS " : "FAIL ") + result.name + " (" + formatMillis(result.nanos)
+                        + " ms)" + (result.detail.isEmpty() ? "" : ": " + result.detail));
+                if (result.passed) {
+                    passed++;
+                }
+                gameNanos += result.nanos;
+            }
+
+            long elapsed = System.nanoTime() - start;
+            out.println();
+            out.println("Passed: " + passed + "/" + inputs.length);
+            out.println("Failed: " + (inputs.length - passed));
+            out.println("Threads: " + threads);
+            out.println("Time: " + formatMillis(elapsed) + " ms (" + formatMillis(gameNanos) + " ms in games)");
+            return passed == inputs.length;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Function that runs one test case and compares its output with the expected one.
+     *
+     * @param input the .in file
+     * @return the result of the comparison
+     */
+    private Result runTestCase(File input) {
+        String name = input.getName().substring(0, input.getName().length() - ".in".length());
+        long start = System.nanoTime();
+        try (GameFile gameFile = new GameFile(input.getPath())) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            PrintStream gameOut = new PrintStream(buffer, false, StandardCharsets.UTF_8.name());
+            new BoxShogi(gameFile, gameOut).runGameInFileMode();
+            gameOut.flush();
+            String actual = new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+            long nanos = System.nanoTime() - start;
+
+            File expectedFile = new File(input.getParentFile(), name + ".out");
+            if (!expectedFile.exists()) {
+                return new Result(name, false, nanos, "no " + expectedFile.getName());
+            }
+            String expected = new String(Files.readAllBytes(expectedFile.toPath()), StandardCharsets.UTF_8);
+            String difference = firstDifference(expected, actual);
+            return new Result(name, difference == null, nanos, difference == null ? "" : difference);
+        } catch (Exception e) {
+            return new Result(name, false, System.nanoTime() - start, e.toString());
+        }
+    }
+
+    /**
+     * Function that finds the first line where two outputs differ.
+     *
+     * @param expected the expected output
+     * @param actual   the output of the game
+     * @return a description of the first difference, or null if there is none
+     */
+    private static String firstDifference(String expected, String actual) {
+        List<String> expectedLines = normalizedLines(expected);
+        List<String> actualLines = normalizedLines(actual);
+        int common = Math.min(expectedLines.size(), actualLines.size());
+        for (int i = 0; i < common; i++) {
+            if (!expectedLines.get(i).equals(actualLines.get(i))) {
+                return "line " + (i + 1) + " expected \"" + expectedLines.get(i) + "\" but was \""
+                        + actualLines.get(i) + "\"";
+            }
+        }
+        if (expectedLines.size() != actualLines.size()) {
+            return "expected " + expectedLines.size() + " lines but was " + actualLines.size();
+        }
+        return null;
+    }
+
+    /**
+     * Function that splits an output into lines without trailing whitespace or trailing blank lines.
+     *
+     * @param text the output
+     * @return the lines
+     */
+    private static List<String> normalizedLines(String text) {
+        List<String> lines = new ArrayList<>();
+        for (String line : text.split("\r?\n", -1)) {
+            int end = line.length();
+            while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+                end--;
+            }
+            lines.add(line.substring(0, end));
+        }
+        while (!lines.isEmpty() && lines.get(lines.size() - 1).isEmpty()) {
+            lines.remove(lines.size() - 1);
+        }
+        return lines;
+    }
+
+    private static Result getResult(Future<Result> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the test cases", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+    }
+
+    /**
+     * Outcome of one test case.
+     */
+    private static class Result {
+
+        private final String name;
+        private final boolean passed;
+        private final long nanos;
+        private final String detail;
+
+        Result(String name, boolean passed, long nanos, String detail) {
+            this.name = name;
+            this.passed = passed;
+            this.nanos = nanos;
+            this.detail = detail;
+        }
+    }
+}
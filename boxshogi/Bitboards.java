@@ -0,0 +1,223 @@
+package boxshogi;
+
+/**
+ * Class holding the precomputed bitboard tables of Box Shogi.
+ *
+ * A square is encoded as an integer 0..24 computed by row * 5 + col, so a1 is
+ * 0, e1 is 4 and e5 is 24. A bitboard is an int whose bit i is set when square
+ * i belongs to the set.
+ */
+public final class Bitboards {
+
+    public static final int BOARD_SIZE = 5;
+    public static final int SQUARE_COUNT = BOARD_SIZE * BOARD_SIZE;
+    public static final int FULL = (1 << SQUARE_COUNT) - 1;
+
+    /** Side indices used by every per-side table. */
+    public static final int LOWER = 0;
+    public static final int UPPER = 1;
+
+    /** Rule indices, in the same order as the rule strings "d", "n", "g", "s", "r", "p", "gd", "nd". */
+    public static final int RULE_D = 0;
+    public static final int RULE_N = 1;
+    public static final int RULE_G = 2;
+    public static final int RULE_S = 3;
+    public static final int RULE_R = 4;
+    public static final int RULE_P = 5;
+    public static final int RULE_GD = 6;
+    public static final int RULE_ND = 7;
+    public static final int RULE_COUNT = 8;
+
+    /** Directions, the first four increase the square index and the last four decrease it. */
+    private static final int[] DIRECTION_COL = { 0, 1, 1, -1, 0, -1, -1, 1 };
+    private static final int[] DIRECTION_ROW = { 1, 0, 1, 1, -1, 0, -1, -1 };
+    private static final int DIRECTION_COUNT = 8;
+
+    /** STEP_ATTACKS[side][rule][square] is the non-sliding part of the rule, from the PieceKind steps. */
+    private static final int[][][] STEP_ATTACKS = new int[2][RULE_COUNT][SQUARE_COUNT];
+
+    /** RAYS[direction][square] holds every square from square (exclusive) to the edge. */
+    private static final int[][] RAYS = new int[DIRECTION_COUNT][SQUARE_COUNT];
+
+    /** BETWEEN[from][to] holds the squares strictly between two aligned squares. */
+    private static final int[][] BETWEEN = new int[SQUARE_COUNT][SQUARE_COUNT];
+
+    /** LINE[a][b] holds the whole row, column or diagonal through two aligned squares, both included. */
+    private static final int[][] LINE = new int[SQUARE_COUNT][SQUARE_COUNT];
+
+    /** ROW_MASKS[row] and COL_MASKS[col] hold the squares of that row and column. */
+    private static final int[] ROW_MASKS = new int[BOARD_SIZE];
+    private static final int[] COL_MASKS = new int[BOARD_SIZE];
+
+    static {
+        for (int sq = 0; sq < SQUARE_COUNT; sq++) {
+            ROW_MASKS[row(sq)] |= bit(sq);
+            COL_MASKS[col(sq)] |= bit(sq);
+        }
+
+        for (int side = LOWER; side <= UPPER; side++) {
+            for (PieceKind kind : PieceKind.values()) {
+                for (int sq = 0; sq < SQUARE_COUNT; sq++) {
+                    STEP_ATTACKS[side][kind.getRule()][sq] = stepMask(sq, kind.getSteps(side));
+                }
+            }
+        }
+
+        for (int dir = 0; dir < DIRECTION_COUNT; dir++) {
+            for (int sq = 0; sq < SQUARE_COUNT; sq++) {
+                int col = col(sq) + DIRECTION_COL[dir];
+                int row = row(sq) + DIRECTION_ROW[dir];
+                int ray = 0;
+                while (onBoard(col, row)) {
+                    int to = square(col, row);
+                    ray |= bit(to);
+                    BETWEEN[sq][to] = ray & ~bit(to);
+                    col += DIRECTION_COL[dir];
+                    row += DIRECTION_ROW[dir];
+                }
+                RAYS[dir][sq] = ray;
+            }
+        }
+
+        // Opposite directions are four apart.
+        for (int dir = 0; dir < DIRECTION_COUNT; dir++) {
+            for (int sq = 0; sq < SQUARE_COUNT; sq++) {
+                int line = RAYS[dir][sq] | RAYS[dir ^ 4][sq] | bit(sq);
+                for (int ray = RAYS[dir][sq]; ray != 0; ray &= ray - 1) {
+                    LINE[sq][Integer.numberOfTrailingZeros(ray)] = line;
+                }
+            }
+        }
+    }
+
+    private Bitboards() {
+    }
+
+    /** <-------------------- Square helpers --------------------> **/
+
+    public static int square(int col, int row) {
+        return row * BOARD_SIZE + col;
+    }
+
+    public static int col(int sq) {
+        return sq % BOARD_SIZE;
+    }
+
+    public static int row(int sq) {
+        return sq / BOARD_SIZE;
+    }
+
+    public static boolean onBoard(int col, int row) {
+        return col >= 0 && col < BOARD_SIZE && row >= 0 && row < BOARD_SIZE;
+    }
+
+    public static int bit(int sq) {
+        return 1 << sq;
+    }
+
+    public static int side(boolean isLower) {
+        return isLower ? LOWER : UPPER;
+    }
+
+    /**
+     * Function that returns the row on which pieces of given side get promoted.
+     *
+     * @param side LOWER or UPPER
+     * @return the mask of the promotion row
+     */
+    public static int promotionZone(int side) {
+        return side == LOWER ? ROW_MASKS[BOARD_SIZE - 1] : ROW_MASKS[0];
+    }
+
+    public static int rowMask(int row) {
+        return ROW_MASKS[row];
+    }
+
+    public static int colMask(int col) {
+        return COL_MASKS[col];
+    }
+
+    public static int between(int from, int to) {
+        return BETWEEN[from][to];
+    }
+
+    public static int line(int a, int b) {
+        return LINE[a][b];
+    }
+
+    /** <-------------------- Attack helpers --------------------> **/
+
+    /**
+     * Function that returns every square a piece with given rule attacks.
+     *
+     * @param rule     one of the RULE_* indices
+     * @param side     the side owning the piece
+     * @param sq       the square the piece stands on
+     * @param occupied every occupied square of the board
+     * @return the attacked squares, including squares of pieces on either side
+     */
+    public static int attacks(int rule, int side, int sq, int occupied) {
+        switch (rule) {
+            case RULE_N:
+                return rookAttacks(sq, occupied);
+            case RULE_G:
+                return bishopAttacks(sq, occupied);
+            case RULE_GD:
+                return STEP_ATTACKS[side][rule][sq] | bishopAttacks(sq, occupied);
+            case RULE_ND:
+                return STEP_ATTACKS[side][rule][sq] | rookAttacks(sq, occupied);
+            default:
+                return STEP_ATTACKS[side][rule][sq];
+        }
+    }
+
+    public static int stepAttacks(int rule, int side, int sq) {
+        return STEP_ATTACKS[side][rule][sq];
+    }
+
+    public static int rookAttacks(int sq, int occupied) {
+        return slide(0, sq, occupied) | slide(1, sq, occupied) | slide(4, sq, occupied) | slide(5, sq, occupied);
+    }
+
+    public static int bishopAttacks(int sq, int occupied) {
+        return slide(2, sq, occupied) | slide(3, sq, occupied) | slide(6, sq, occupied) | slide(7, sq, occupied);
+    }
+
+    /**
+     * Function that returns the squares reached along one ray, stopping on the first blocker.
+     *
+     * @param dir      direction index
+     * @param sq       the square the ray starts from
+     * @param occupied every occupied square of the board
+     * @return the squares along the ray up to and including the first blocker
+     */
+    private static int slide(int dir, int sq, int occupied) {
+        int ray = RAYS[dir][sq];
+        int blockers = ray & occupied;
+        if (blockers == 0) {
+            return ray;
+        }
+        // Rays of the first four directions grow towards higher squares.
+        int first = dir < 4 ? Integer.numberOfTrailingZeros(blockers) : 31 - Integer.numberOfLeadingZeros(blockers);
+        return ray ^ RAYS[dir][first];
+    }
+
+    /**
+     * Function that builds a step mask from deltas.
+     *
+     * @param sq    the square the piece stands on
+     * @param steps the deltas as {dCol, dRow}, already oriented for the side
+     * @return the mask of every reachable square
+     */
+    private static int stepMask(int sq, int[][] steps) {
+        int mask = 0;
+        for (int[] step : steps) {
+            int col = col(sq) + step[0];
+            int row = row(sq) + step[1];
+            if (onBoard(col, row)) {
+                mask |= bit(square(col, row));
+            }
+        }
+        return mask;
+    }
+}
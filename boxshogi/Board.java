@@ -1,26 +1,86 @@
 package boxshogi;
 
-import java.util.AbstractMap;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Class to represent Box Shogi board
+ *
+ * Squares are ints from 0 (a1) to 24 (e5), see Bitboards. Besides the piece
+ * on each square, the board keeps the squares each side attacks, updated as
+ * pieces come and go, per-side, per-type bitboards (see Bitboards) so attack
+ * and check queries are a few mask operations, and a PieceList per side to
+ * walk the pieces of a player. The piece, square and hand values of
+ * Evaluation are summed the same way, so the search does not rescan the board
+ * to score a position.
  */
 public class Board {
 
     private final int BOARD_SIZE = 5;
-    private final String[] ALL_POSSIBLE_PIECES = { "n", "g", "r", "s", "d", "p" };
+    private static final int[] INITIAL_PIECES = { Piece.NOTES, Piece.GOVERNANCE, Piece.RELAY, Piece.SHIELD,
+            Piece.DRIVE, Piece.PREVIEW };
+    private static final int INITIAL_UNDO_CAPACITY = 256;
 
-    private Piece[][] board;
-    private Map<Boolean, Player> playerStatus;
+    /** Pieces of the printed board, a square is drawn as " p|", "+p|" or "__|". */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final String EMPTY_SQUARE = "__|";
+    private static final String COLUMN_LABELS = "    a  b  c  d  e";
+    private static final String[] ROW_LABELS = { "1 |", "2 |", "3 |", "4 |", "5 |" };
+    private static final String[][] SQUARE_GLYPHS = new String[2][Piece.TYPE_COUNT];
+    private static final int BOARD_TEXT_LENGTH = 6 * (20 + LINE_SEPARATOR.length());
+
+    static {
+        for (int type = 0; type < Piece.TYPE_COUNT; type++) {
+            for (boolean isLower : new boolean[] { true, false }) {
+                String name = Piece.of(type, isLower).getName();
+                SQUARE_GLYPHS[Bitboards.side(isLower)][type] = (name.length() == 1 ? " " + name : name) + "|";
+            }
+        }
+    }
+
+    private Piece[] board;
+    private int[][] pieceBitboards;
+    private int[] sideBitboards;
+    private int[] driveSquares;
+    private int[] pieceAttacks;
+    private int[][] attackCounts;
+    private int[] attackMaps;
+    private PieceList[] pieceLists;
+    private Player[] players;
+    private boolean lowerTurn;
+    private long key;
+    private Evaluation evaluation;
+    private int score;
+
+    /** Undo stack, one slot per move made and not yet unmade. */
+    private int ply;
+    private int[] undoMoves;
+    private Piece[] undoMovedPieces;
+    private Piece[] undoCapturedPieces;
+    private int[] undoHandIndices;
+    private int[] undoDriveSquares;
+    private long[] undoKeys;
+    private int[] undoScores;
 
     public Board(boolean empty) {
         // Initial borad.
-        this.board = new Piece[BOARD_SIZE][BOARD_SIZE];
-        this.playerStatus = new HashMap<>();
-        this.playerStatus.put(true, new Player(true));
-        this.playerStatus.put(false, new Player(false));
+        this.board = new Piece[Bitboards.SQUARE_COUNT];
+        this.pieceBitboards = new int[2][Piece.TYPE_COUNT];
+        this.sideBitboards = new int[2];
+        this.driveSquares = new int[] { -1, -1 };
+        this.pieceAttacks = new int[Bitboards.SQUARE_COUNT];
+        this.attackCounts = new int[2][Bitboards.SQUARE_COUNT];
+        this.attackMaps = new int[2];
+        this.pieceLists = new PieceList[] { new PieceList(), new PieceList() };
+        this.lowerTurn = true;
+        this.key = 0L;
+        this.evaluation = Evaluation.DEFAULT;
+        this.score = 0;
+        this.ply = 0;
+        allocateUndoStack(INITIAL_UNDO_CAPACITY);
+        this.players = new Player[2];
+        this.players[Bitboards.LOWER] = new Player(true);
+        this.players[Bitboards.UPPER] = new Player(false);
 
         // IF we need an empty board
         if (empty) {
@@ -29,135 +89,683 @@ public class Board {
 
         // Initial the first and last row.
         for (int eachCol = 0; eachCol < BOARD_SIZE; eachCol++) {
-            String pieceName = ALL_POSSIBLE_PIECES[eachCol];
-            this.board[BOARD_SIZE - 1 - eachCol][0] = new Piece(pieceName, true);
-            this.board[eachCol][BOARD_SIZE - 1] = new Piece(pieceName, false);
-            // Record pieces' positions
-            this.playerStatus.get(true).addAPiecePosition(pieceName, BOARD_SIZE - 1 - eachCol, 0);
-            this.playerStatus.get(false).addAPiecePosition(pieceName.toUpperCase(), eachCol, BOARD_SIZE - 1);
-            // Record drive's position it self
-            if (pieceName.equalsIgnoreCase("d")) {
-                this.playerStatus.get(true)
-                        .setDrivePosition(new AbstractMap.SimpleEntry<Integer, Integer>(BOARD_SIZE - 1 - eachCol, 0));
-                this.playerStatus.get(false)
-                        .setDrivePosition(new AbstractMap.SimpleEntry<Integer, Integer>(eachCol, BOARD_SIZE - 1));
-            }
-
+            int type = INITIAL_PIECES[eachCol];
+            placePieceOnBoard(Bitboards.square(BOARD_SIZE - 1 - eachCol, 0), Piece.of(type, true));
+            placePieceOnBoard(Bitboards.square(eachCol, BOARD_SIZE - 1), Piece.of(type, false));
         }
 
         // Initial preview.
-        String pieceName = ALL_POSSIBLE_PIECES[BOARD_SIZE];
-        this.board[0][1] = new Piece(pieceName, true);
-        this.board[BOARD_SIZE - 1][BOARD_SIZE - 2] = new Piece(pieceName, false);
-        this.playerStatus.get(true).addAPiecePosition(pieceName, 0, 1);
-        this.playerStatus.get(false).addAPiecePosition(pieceName.toUpperCase(), BOARD_SIZE - 1, BOARD_SIZE - 2);
+        int type = INITIAL_PIECES[BOARD_SIZE];
+        placePieceOnBoard(Bitboards.square(0, 1), Piece.of(type, true));
+        placePieceOnBoard(Bitboards.square(BOARD_SIZE - 1, BOARD_SIZE - 2), Piece.of(type, false));
+    }
+
+    /**
+     * Function that builds the board of a test case, before any of its moves.
+     *
+     * @param input the parsed test case
+     * @return the board with initial pieces and captures, lower player to move
+     * @throws IllegalArgumentException if a piece is unknown or placed off the board
+     */
+    static Board fromTestCase(Utils.TestCase input) {
+        Board board = new Board(true);
+        board.setCaptures(true, input.lowerCaptures);
+        board.setCaptures(false, input.upperCaptures);
+        for (Utils.InitialPosition eachPosition : input.initialPieces) {
+            String name = eachPosition.piece;
+            String location = eachPosition.position;
+            int sq = Move.parseSquare(location);
+            if (sq < 0) {
+                throw new IllegalArgumentException("Invalid location of " + name + ": " + location);
+            }
+            board.placePieceOnBoard(sq, Piece.fromName(name));
+        }
+        return board;
+    }
+
+    /**
+     * Function that copies the position, without its undo stack.
+     *
+     * Pieces are never changed once on a board, so the copy shares them.
+     *
+     * @return an independent board holding the same position
+     */
+    public Board copy() {
+        Board copy = new Board(true);
+        copy.evaluation = evaluation;
+        for (int sq = 0; sq < Bitboards.SQUARE_COUNT; sq++) {
+            if (board[sq] != null) {
+                copy.placePieceOnBoard(sq, board[sq]);
+            }
+        }
+        copy.setLowerTurn(lowerTurn);
+        copy.getPlayer(true).getHand().copyFrom(getPlayer(true).getHand());
+        copy.getPlayer(false).getHand().copyFrom(getPlayer(false).getHand());
+        copy.key = copy.computeKey();
+        copy.score = copy.computeScore();
+        return copy;
     }
 
     /* Print board */
     public String toString() {
-        String[][] pieces = new String[BOARD_SIZE][BOARD_SIZE];
-        for (int row = 0; row < BOARD_SIZE; row++) {
+        StringBuilder out = new StringBuilder(BOARD_TEXT_LENGTH);
+        appendTo(out);
+        return out.toString();
+    }
+
+    /**
+     * Function that writes the board the way toString prints it, without
+     * building any intermediate string.
+     *
+     * Example:
+     * 5 | N| G| R| S| D|
+     * 4 |__|__|__|__| P|
+     * 3 |__|__|__|__|__|
+     * 2 | p|__|__|__|__|
+     * 1 | d| s| r| g| n|
+     *     a  b  c  d  e
+     *
+     * @param out the builder to append to
+     */
+    public void appendTo(StringBuilder out) {
+        for (int row = BOARD_SIZE - 1; row >= 0; row--) {
+            out.append(ROW_LABELS[row]);
             for (int col = 0; col < BOARD_SIZE; col++) {
-                Piece curr = (Piece) board[col][row];
-                pieces[col][row] = this.isOccupied(col, row) ? board[col][row].getName() : "";
+                Piece curr = board[Bitboards.square(col, row)];
+                out.append(curr != null ? SQUARE_GLYPHS[Bitboards.side(curr.getIsLower())][curr.getType()]
+                        : EMPTY_SQUARE);
             }
+            out.append(LINE_SEPARATOR);
         }
-        return stringifyBoard(pieces);
+        out.append(COLUMN_LABELS).append(LINE_SEPARATOR);
     }
 
     /**
-     * PlayerStatusMap getter.
-     * 
-     * @return the map storing two players status
+     * Players getter.
+     *
+     * @return the status of both players, indexed by Bitboards.LOWER and Bitboards.UPPER
      */
-    public Map<Boolean, Player> getPlayerStatus() {
-        return playerStatus;
+    public Player[] getPlayers() {
+        return players;
     }
 
     /**
-     * Function that return the piece on given position.
-     * 
-     * @param col integer representing the col
-     * @param row integer representing the row
-     * @return the Piece on given position
+     * Function that returns the status of one player.
+     *
+     * @param isLower whether to return lower player
+     * @return the player
+     */
+    public Player getPlayer(boolean isLower) {
+        return players[Bitboards.side(isLower)];
+    }
+
+    /**
+     * Side to move getter.
+     *
+     * @return true if lower player is to move in this position
      */
-    public Piece getPiece(int col, int row) {
-        if (col < 0 || col > 4 || row < 0 || row > 4) {
-            return null;
+    public boolean getLowerTurn() {
+        return lowerTurn;
+    }
+
+    public void setLowerTurn(boolean lowerTurn) {
+        if (this.lowerTurn != lowerTurn) {
+            key ^= Zobrist.upperToMove();
         }
-        return board[col][row];
+        this.lowerTurn = lowerTurn;
     }
 
     /**
-     * Function that places a piece on given position.
-     * 
-     * @param col   integer representing the col
-     * @param row   integer representing the row
-     * @param piece the piece to place
+     * Function that replaces the captures of a player.
+     *
+     * @param isLower  whether the captures belong to lower player
+     * @param captures the names of the captured pieces, in display order
      */
-    public void placePieceOnBoard(int col, int row, Piece piece) {
-        this.board[col][row] = piece;
+    public void setCaptures(boolean isLower, List<String> captures) {
+        getPlayer(isLower).setCaptures(captures);
+        key = computeKey();
+        score = computeScore();
     }
 
     /**
-     * Function that remove a piece from given position.
+     * Function that adds a piece to the hand of a player, after the pieces already there.
+     *
+     * @param isLower whether the hand belongs to lower player
+     * @param type    an unpromoted type index
+     */
+    public void addToHand(boolean isLower, int type) {
+        int side = Bitboards.side(isLower);
+        int count = getHandCount(isLower, type);
+        key ^= Zobrist.hand(side, type, count) ^ Zobrist.hand(side, type, count + 1);
+        score += evaluation.handScore(side, type, count + 1);
+        getPlayer(isLower).getHand().add(type);
+    }
+
+    /**
+     * Function that empties the board and both hands and gives the move to
+     * lower player, so the board can be reused for another position.
+     */
+    public void clear() {
+        for (int side = Bitboards.LOWER; side <= Bitboards.UPPER; side++) {
+            PieceList pieces = pieceLists[side];
+            while (pieces.size() > 0) {
+                removePieceFromBoard(pieces.square(pieces.size() - 1));
+            }
+            players[side].getHand().clear();
+        }
+        lowerTurn = true;
+        ply = 0;
+        key = computeKey();
+        score = computeScore();
+    }
+
+    /** <-------------------- Position key --------------------> **/
+
+    /**
+     * Zobrist key getter, the key is kept up to date on every change.
+     *
+     * @return the 64-bit key of the position, see Zobrist
+     */
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * Function that computes the Zobrist key of the position from scratch.
+     *
+     * @return the 64-bit key of the position
+     */
+    public long computeKey() {
+        long computed = lowerTurn ? 0L : Zobrist.upperToMove();
+        for (int side = Bitboards.LOWER; side <= Bitboards.UPPER; side++) {
+            for (int type = 0; type < Piece.TYPE_COUNT; type++) {
+                for (int pieces = pieceBitboards[side][type]; pieces != 0; pieces &= pieces - 1) {
+                    computed ^= Zobrist.piece(side, type, Integer.numberOfTrailingZeros(pieces));
+                }
+            }
+            for (int type = 0; type <= Piece.PREVIEW; type++) {
+                computed ^= Zobrist.hand(side, type, getHandCount(side == Bitboards.LOWER, type));
+            }
+        }
+        return computed;
+    }
+
+    /** <-------------------- Evaluation --------------------> **/
+
+    public Evaluation getEvaluation() {
+        return evaluation;
+    }
+
+    /**
+     * Function that changes the weights the score of the board is kept with.
+     *
+     * @param evaluation the weights
+     */
+    public void setEvaluation(Evaluation evaluation) {
+        this.evaluation = evaluation;
+        this.score = computeScore();
+    }
+
+    /**
+     * Score getter, the score is kept up to date on every change.
+     *
+     * @return the piece, square and hand values of lower player minus those of
+     *         UPPER, see Evaluation
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Function that computes the score of the position from scratch.
+     *
+     * @return the piece, square and hand values of lower player minus those of UPPER
+     */
+    public int computeScore() {
+        int computed = 0;
+        for (int side = Bitboards.LOWER; side <= Bitboards.UPPER; side++) {
+            for (int type = 0; type < Piece.TYPE_COUNT; type++) {
+                for (int pieces = pieceBitboards[side][type]; pieces != 0; pieces &= pieces - 1) {
+                    computed += evaluation.pieceScore(side, type, Integer.numberOfTrailingZeros(pieces));
+                }
+            }
+            for (int type = 0; type <= Piece.PREVIEW; type++) {
+                for (int n = getHandCount(side == Bitboards.LOWER, type); n > 0; n--) {
+                    computed += evaluation.handScore(side, type, n);
+                }
+            }
+        }
+        return computed;
+    }
+
+    /**
+     * Function that counts the pieces of one type a player holds in hand.
+     *
+     * @param isLower whether the captures belong to lower player
+     * @param type    an unpromoted type index
+     * @return how many pieces of the type are held
+     */
+    public int getHandCount(boolean isLower, int type) {
+        return getPlayer(isLower).getHand().count(type);
+    }
+
+    /**
+     * Function that return the piece on given square.
      * 
-     * @param col integer representing the col
-     * @param row integer representing the row
+     * @param sq the square, see Bitboards
+     * @return the Piece on given square, or null if it is empty
      */
-    public void removePieceFromBoard(int col, int row) {
-        this.board[col][row] = null;
+    public Piece getPiece(int sq) {
+        return board[sq];
     }
 
     /**
-     * Function that return whether given position is occupied by a piece.
+     * Function that places a piece on given square.
      * 
-     * @param col integer representing the col
-     * @param row integer representing the roe
-     * @return whether given position is occupied by a piece
+     * @param sq    the square, see Bitboards
+     * @param piece the piece to place
      */
-    private boolean isOccupied(int col, int row) {
-        return board[col][row] != null;
+    public void placePieceOnBoard(int sq, Piece piece) {
+        removePieceFromBoard(sq);
+        pieceLists[Bitboards.side(piece.getIsLower())].add(sq, piece.getType());
+        fillSquare(sq, piece);
     }
 
     /**
-     * Funtion that builds the string for our board.
+     * Function that remove a piece from given square.
      * 
-     * @param board a two dimension array representing the board
-     * @return the String representin the board
+     * @param sq the square, see Bitboards
+     */
+    public void removePieceFromBoard(int sq) {
+        Piece piece = this.board[sq];
+        if (piece == null) {
+            return;
+        }
+        pieceLists[Bitboards.side(piece.getIsLower())].remove(sq);
+        clearSquare(sq);
+    }
+
+    /**
+     * Function that moves a piece to an empty square, keeping its entry in the piece list.
+     *
+     * @param from  the square of the piece
+     * @param to    an empty square
+     * @param piece the piece to put on the destination, the moved one or its promotion
      */
-    private String stringifyBoard(String[][] board) {
-        String str = "";
+    private void movePiece(int from, int to, Piece piece) {
+        clearSquare(from);
+        PieceList pieces = pieceLists[Bitboards.side(piece.getIsLower())];
+        pieces.move(from, to);
+        pieces.setType(to, piece.getType());
+        fillSquare(to, piece);
+    }
 
-        for (int row = board.length - 1; row >= 0; row--) {
+    /**
+     * Function that puts a piece on an empty square and updates everything but the piece lists.
+     *
+     * @param sq    the square, see Bitboards
+     * @param piece the piece to place
+     */
+    private void fillSquare(int sq, Piece piece) {
+        this.board[sq] = piece;
+        int bit = Bitboards.bit(sq);
+        int side = Bitboards.side(piece.getIsLower());
+        this.pieceBitboards[side][piece.getType()] |= bit;
+        this.sideBitboards[side] |= bit;
+        this.key ^= Zobrist.piece(side, piece.getType(), sq);
+        this.score += evaluation.pieceScore(side, piece.getType(), sq);
+        if (piece.getType() == Piece.DRIVE) {
+            this.driveSquares[side] = sq;
+        }
+        updateSlidersThrough(sq);
+        this.pieceAttacks[sq] = attacksFrom(sq);
+        addAttacks(side, this.pieceAttacks[sq]);
+    }
 
-            str += Integer.toString(row + 1) + " |";
-            for (int col = 0; col < board[row].length; col++) {
-                str += stringifySquare(board[col][row]);
+    /**
+     * Function that empties a square and updates everything but the piece lists.
+     *
+     * @param sq a square holding a piece
+     */
+    private void clearSquare(int sq) {
+        Piece piece = this.board[sq];
+        this.board[sq] = null;
+        int bit = Bitboards.bit(sq);
+        int side = Bitboards.side(piece.getIsLower());
+        removeAttacks(side, this.pieceAttacks[sq]);
+        this.pieceAttacks[sq] = 0;
+        this.pieceBitboards[side][piece.getType()] &= ~bit;
+        this.sideBitboards[side] &= ~bit;
+        this.key ^= Zobrist.piece(side, piece.getType(), sq);
+        this.score -= evaluation.pieceScore(side, piece.getType(), sq);
+        if (piece.getType() == Piece.DRIVE) {
+            this.driveSquares[side] = -1;
+        }
+        updateSlidersThrough(sq);
+    }
+
+    /** <-------------------- Attack maps --------------------> **/
+
+    /**
+     * Function that recomputes the attacks of every sliding piece that sees a
+     * square, after the square was emptied or filled.
+     *
+     * @param sq the square that changed
+     */
+    private void updateSlidersThrough(int sq) {
+        int occupied = getOccupied();
+        int rookLike = pieceBitboards[Bitboards.LOWER][Piece.NOTES]
+                | pieceBitboards[Bitboards.LOWER][Piece.PROMOTED_NOTES]
+                | pieceBitboards[Bitboards.UPPER][Piece.NOTES]
+                | pieceBitboards[Bitboards.UPPER][Piece.PROMOTED_NOTES];
+        int bishopLike = pieceBitboards[Bitboards.LOWER][Piece.GOVERNANCE]
+                | pieceBitboards[Bitboards.LOWER][Piece.PROMOTED_GOVERNANCE]
+                | pieceBitboards[Bitboards.UPPER][Piece.GOVERNANCE]
+                | pieceBitboards[Bitboards.UPPER][Piece.PROMOTED_GOVERNANCE];
+        int sliders = (Bitboards.rookAttacks(sq, occupied) & rookLike)
+                | (Bitboards.bishopAttacks(sq, occupied) & bishopLike);
+        for (; sliders != 0; sliders &= sliders - 1) {
+            int slider = Integer.numberOfTrailingZeros(sliders);
+            int side = Bitboards.side(board[slider].getIsLower());
+            int before = pieceAttacks[slider];
+            int after = attacksFrom(slider);
+            removeAttacks(side, before & ~after);
+            addAttacks(side, after & ~before);
+            pieceAttacks[slider] = after;
+        }
+    }
+
+    private void addAttacks(int side, int squares) {
+        int[] counts = attackCounts[side];
+        for (; squares != 0; squares &= squares - 1) {
+            int sq = Integer.numberOfTrailingZeros(squares);
+            if (counts[sq]++ == 0) {
+                attackMaps[side] |= Bitboards.bit(sq);
             }
-            str += System.getProperty("line.separator");
         }
+    }
 
-        str += "    a  b  c  d  e" + System.getProperty("line.separator");
+    private void removeAttacks(int side, int squares) {
+        int[] counts = attackCounts[side];
+        for (; squares != 0; squares &= squares - 1) {
+            int sq = Integer.numberOfTrailingZeros(squares);
+            if (--counts[sq] == 0) {
+                attackMaps[side] &= ~Bitboards.bit(sq);
+            }
+        }
+    }
 
-        return str;
+    /**
+     * Function that returns every square a player attacks.
+     *
+     * @param byLower whether the attacks are those of lower player
+     * @return the bitboard of attacked squares
+     */
+    public int getAttackMap(boolean byLower) {
+        return attackMaps[Bitboards.side(byLower)];
+    }
+
+    public boolean isSquareAttacked(int sq, boolean byLower) {
+        return (attackMaps[Bitboards.side(byLower)] & Bitboards.bit(sq)) != 0;
     }
 
     /**
-     * Function that builds the string on each board from a string.
-     * 
-     * @param sq String for each piece
-     * @return the String should be shown on board
-     */
-    private String stringifySquare(String sq) {
-        switch (sq.length()) {
-            case 0:
-                return "__|";
-            case 1:
-                return " " + sq + "|";
-            case 2:
-                return sq + "|";
-        }
-        throw new IllegalArgumentException("Board must be an array of strings like \"\", \"P\", or \"+P\"");
+     * Function that returns how many pieces of a player attack a square.
+     *
+     * @param sq      the square
+     * @param byLower whether the attackers belong to lower player
+     * @return the number of attackers
+     */
+    public int getAttackerCount(int sq, boolean byLower) {
+        return attackCounts[Bitboards.side(byLower)][sq];
+    }
+
+    /**
+     * Function that checks whether the drive of a player is attacked.
+     *
+     * @param isLower whether the drive belongs to lower player
+     * @return true if the drive is in check, false if it is safe or not on the board
+     */
+    public boolean isInCheck(boolean isLower) {
+        int drive = driveSquares[Bitboards.side(isLower)];
+        return drive >= 0 && isSquareAttacked(drive, !isLower);
+    }
+
+    /**
+     * Function that returns how many pieces give check to the drive of a player.
+     *
+     * @param isLower whether the drive belongs to lower player
+     * @return the number of checkers, 0 if the drive is not on the board
+     */
+    public int getCheckerCount(boolean isLower) {
+        int drive = driveSquares[Bitboards.side(isLower)];
+        return drive >= 0 ? attackCounts[Bitboards.side(!isLower)][drive] : 0;
+    }
+
+    /** <-------------------- Make and unmake --------------------> **/
+
+    /**
+     * Function that plays a move or drop for the side to move and hands the turn over.
+     *
+     * The move is expected to be legal, as produced by MoveGenerator, except that a
+     * move may leave the own drive attacked so callers can test it and unmake it.
+     * Everything needed to take it back is stored on the undo stack, so no object is
+     * allocated once the stack has grown to the depth in use.
+     *
+     * @param move an encoded move, see Move
+     */
+    public void makeMove(int move) {
+        if (ply == undoMoves.length) {
+            allocateUndoStack(ply * 2);
+        }
+        int side = Bitboards.side(lowerTurn);
+        int to = Move.to(move);
+        undoMoves[ply] = move;
+        undoDriveSquares[ply] = driveSquares[side];
+        undoCapturedPieces[ply] = null;
+        undoMovedPieces[ply] = null;
+        undoHandIndices[ply] = -1;
+        undoKeys[ply] = key;
+        undoScores[ply] = score;
+
+        if (Move.isDrop(move)) {
+            int type = Move.dropType(move);
+            int count = getHandCount(lowerTurn, type);
+            key ^= Zobrist.hand(side, type, count) ^ Zobrist.hand(side, type, count - 1);
+            score -= evaluation.handScore(side, type, count);
+            undoHandIndices[ply] = getPlayer(lowerTurn).getHand().remove(type);
+            placePieceOnBoard(to, Piece.of(type, lowerTurn));
+        } else {
+            int from = Move.from(move);
+            Piece moved = board[from];
+            undoMovedPieces[ply] = moved;
+            if (from != to) {
+                Piece captured = board[to];
+                if (captured != null) {
+                    int type = Piece.baseType(captured.getType());
+                    int count = getHandCount(lowerTurn, type);
+                    key ^= Zobrist.hand(side, type, count) ^ Zobrist.hand(side, type, count + 1);
+                    score += evaluation.handScore(side, type, count + 1);
+                    undoCapturedPieces[ply] = captured;
+                    removePieceFromBoard(to);
+                    getPlayer(lowerTurn).getHand().add(type);
+                }
+            }
+            if (from == to) {
+                placePieceOnBoard(to, Move.isPromotion(move) ? moved.promote() : moved);
+            } else {
+                movePiece(from, to, Move.isPromotion(move) ? moved.promote() : moved);
+            }
+        }
+
+        lowerTurn = !lowerTurn;
+        key ^= Zobrist.upperToMove();
+        ply++;
+    }
+
+    /**
+     * Function that takes back the last move made with makeMove.
+     */
+    public void unmakeMove() {
+        ply--;
+        lowerTurn = !lowerTurn;
+        int side = Bitboards.side(lowerTurn);
+        int move = undoMoves[ply];
+        int to = Move.to(move);
+
+        if (Move.isDrop(move)) {
+            removePieceFromBoard(to);
+            getPlayer(lowerTurn).getHand().insert(undoHandIndices[ply], Move.dropType(move));
+        } else {
+            int from = Move.from(move);
+            if (from == to) {
+                placePieceOnBoard(to, undoMovedPieces[ply]);
+            } else {
+                movePiece(to, from, undoMovedPieces[ply]);
+            }
+            Piece captured = undoCapturedPieces[ply];
+            if (captured != null) {
+                placePieceOnBoard(to, captured);
+                getPlayer(lowerTurn).getHand().removeLast();
+                undoCapturedPieces[ply] = null;
+            }
+            undoMovedPieces[ply] = null;
+        }
+        driveSquares[side] = undoDriveSquares[ply];
+        key = undoKeys[ply];
+        score = undoScores[ply];
+    }
+
+    /**
+     * Number of moves made and not unmade yet.
+     *
+     * @return the depth of the undo stack
+     */
+    public int getPly() {
+        return ply;
+    }
+
+    /**
+     * Function that (re)allocates the undo stack, keeping the entries in use.
+     *
+     * @param capacity the number of moves the stack can hold
+     */
+    private void allocateUndoStack(int capacity) {
+        if (undoMoves == null) {
+            undoMoves = new int[capacity];
+            undoMovedPieces = new Piece[capacity];
+            undoCapturedPieces = new Piece[capacity];
+            undoHandIndices = new int[capacity];
+            undoDriveSquares = new int[capacity];
+            undoKeys = new long[capacity];
+            undoScores = new int[capacity];
+            return;
+        }
+        undoMoves = Arrays.copyOf(undoMoves, capacity);
+        undoMovedPieces = Arrays.copyOf(undoMovedPieces, capacity);
+        undoCapturedPieces = Arrays.copyOf(undoCapturedPieces, capacity);
+        undoHandIndices = Arrays.copyOf(undoHandIndices, capacity);
+        undoDriveSquares = Arrays.copyOf(undoDriveSquares, capacity);
+        undoKeys = Arrays.copyOf(undoKeys, capacity);
+        undoScores = Arrays.copyOf(undoScores, capacity);
+    }
+
+    /** <-------------------- Bitboard queries --------------------> **/
+
+    /**
+     * Function that returns the pieces one player has on the board.
+     *
+     * @param isLower whether the pieces belong to lower player
+     * @return the live piece list, only valid until the board changes
+     */
+    public PieceList getPieceList(boolean isLower) {
+        return pieceLists[Bitboards.side(isLower)];
+    }
+
+    /**
+     * Function that returns the squares of all pieces of one type.
+     *
+     * @param isLower whether the pieces belong to lower player
+     * @param type    one of the Piece type indices
+     * @return the bitboard of those pieces
+     */
+    public int getPieceBitboard(boolean isLower, int type) {
+        return pieceBitboards[Bitboards.side(isLower)][type];
+    }
+
+    /**
+     * Function that returns the squares of all pieces of one player.
+     *
+     * @param isLower whether the pieces belong to lower player
+     * @return the bitboard of those pieces
+     */
+    public int getSideBitboard(boolean isLower) {
+        return sideBitboards[Bitboards.side(isLower)];
+    }
+
+    public int getOccupied() {
+        return sideBitboards[Bitboards.LOWER] | sideBitboards[Bitboards.UPPER];
+    }
+
+    /**
+     * Function that returns the square of the drive of a player.
+     *
+     * @param isLower whether the drive belongs to lower player
+     * @return the square of the drive, or -1 if there is none
+     */
+    public int getDriveSquare(boolean isLower) {
+        return driveSquares[Bitboards.side(isLower)];
+    }
+
+    /**
+     * Function that returns every square the piece on given square attacks.
+     *
+     * @param sq the square of the piece
+     * @return the attacked squares, or 0 if the square is empty
+     */
+    public int attacksFrom(int sq) {
+        Piece piece = board[sq];
+        if (piece == null) {
+            return 0;
+        }
+        return Bitboards.attacks(Piece.ruleOfType(piece.getType()), Bitboards.side(piece.getIsLower()), sq,
+                getOccupied());
+    }
+
+    /**
+     * Function that returns all pieces of a player attacking given square.
+     *
+     * @param sq      the square being attacked
+     * @param byLower whether the attackers belong to lower player
+     * @return the bitboard of the attackers
+     */
+    public int attackersOf(int sq, boolean byLower) {
+        return attackersOf(sq, byLower, getOccupied());
+    }
+
+    /**
+     * Function that returns all pieces of a player attacking given square for a given occupancy.
+     *
+     * Step tables are symmetric left to right, so the pieces attacking a square are
+     * found from the same table of the other side looked up from that square.
+     *
+     * @param sq       the square being attacked
+     * @param byLower  whether the attackers belong to lower player
+     * @param occupied the occupancy sliding attacks are blocked by
+     * @return the bitboard of the attackers
+     */
+    public int attackersOf(int sq, boolean byLower, int occupied) {
+        int[] pieces = pieceBitboards[Bitboards.side(byLower)];
+        int other = Bitboards.side(!byLower);
+        int driveLike = pieces[Piece.DRIVE] | pieces[Piece.PROMOTED_NOTES] | pieces[Piece.PROMOTED_GOVERNANCE];
+        int shieldLike = pieces[Piece.SHIELD] | pieces[Piece.PROMOTED_RELAY] | pieces[Piece.PROMOTED_PREVIEW];
+        int notesLike = pieces[Piece.NOTES] | pieces[Piece.PROMOTED_NOTES];
+        int governanceLike = pieces[Piece.GOVERNANCE] | pieces[Piece.PROMOTED_GOVERNANCE];
+        return (Bitboards.stepAttacks(Bitboards.RULE_D, other, sq) & driveLike)
+                | (Bitboards.stepAttacks(Bitboards.RULE_S, other, sq) & shieldLike)
+                | (Bitboards.stepAttacks(Bitboards.RULE_R, other, sq) & pieces[Piece.RELAY])
+                | (Bitboards.stepAttacks(Bitboards.RULE_P, other, sq) & pieces[Piece.PREVIEW])
+                | (Bitboards.rookAttacks(sq, occupied) & notesLike)
+                | (Bitboards.bishopAttacks(sq, occupied) & governanceLike);
     }
 }
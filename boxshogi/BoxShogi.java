@@ -1,12 +1,7 @@
 package boxshogi;
 
-import java.util.AbstractMap;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -14,17 +9,29 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
 
+/**
+ * Class that runs a Box Shogi game in file mode or interactive mode.
+ *
+ * A game only writes to its own output stream and keeps no static state, so
+ * many games can run at once on different threads. The rule checks
+ * examineIsDriveInCheck, findAvailableMoves and checkMoveValid are
+ * package-private so the benchmarks can time them directly.
+ *
+ * Every position of the game is kept in a PositionHistory. By default a game
+ * that cycles only ends with the tie after MAX_TURN moves; with another
+ * RepetitionRule it ends as soon as a position repeats too often.
+ */
 public class BoxShogi {
     /** File mode only attributes **/
-    private final int MAX_TURN = 400;
+    static final int MAX_TURN = 400;
     private int turnNumber;
-    private List<String> moves;
+    private MoveSource moveSource;
     private PrintStream outStream;
-    private List<Utils.InitialPosition> initialPieces;
 
     /** Interactive mode only attribute **/
     private String errorMessage;
     private BufferedReader bufferedReader;
+    private ComputerPlayer[] computerPlayers;
 
     /** Both mode sharing attributes **/
     private int modeFlag; // 0 means file mode, 1 means interactive mode.
@@ -33,9 +40,18 @@ public class BoxShogi {
     private boolean lowerTurn;
     private Board gameBoard;
     private String winMessage;
-    private String previewMove;
-    private List<String> availableMoves;
-    private Map<Boolean, Player> playerStatus;
+    private int outcome; // 1 means lower player won, -1 UPPER player won, 0 no winner.
+    private StringBuilder previewMove;
+    private final StringBuilder statusMessage = new StringBuilder(1024);
+    private byte[] statusBytes = new byte[1024];
+    private int[] availableMoves;
+    private int availableMoveCount;
+    private long[] availableMoveSet;
+    private int[] moveBuffer;
+    private Player[] players;
+    private final PositionHistory history = new PositionHistory();
+    private RepetitionRule repetitionRule = RepetitionRule.STRICT;
+    private Tablebase tablebase;
     
 
     /** <---------------------- File mode only functions ----------------------> **/
@@ -46,34 +62,45 @@ public class BoxShogi {
         this.endGameFlag = 0;
         this.lowerTurn = true;
         this.winMessage = "";
-        this.moves = input.moves;
+        Iterator<String> moves = input.moves.iterator();
+        this.moveSource = () -> moves.hasNext() ? moves.next().split(" ") : null;
         this.outStream = outputStream;
-        this.gameBoard = new Board(true);
-        this.playerStatus = new HashMap<>();
-        this.availableMoves = new LinkedList<>();
-        this.initialPieces = new LinkedList<Utils.InitialPosition>(input.initialPieces);
-        this.playerStatus.put(lowerTurn, new Player(lowerTurn));
-        this.playerStatus.put(!lowerTurn, new Player(!lowerTurn));
-        this.playerStatus.get(lowerTurn).setCaptures(input.lowerCaptures);
-        this.playerStatus.get(!lowerTurn).setCaptures(input.upperCaptures);
-        initialEmptyBoard(initialPieces);
+        this.gameBoard = Board.fromTestCase(input);
+        this.moveBuffer = new int[MoveGenerator.MAX_MOVES];
+        this.availableMoves = new int[MoveGenerator.MAX_MOVES];
+        this.availableMoveSet = new long[Move.CODE_COUNT / Long.SIZE];
+        this.players = gameBoard.getPlayers();
+        this.history.push(gameBoard.getKey(), gameBoard.isInCheck(lowerTurn));
+    }
+
+    /**
+     * Constructor for a game whose moves are read from a file as they are played.
+     *
+     * @param gameFile     the opened game file, still owned by the caller
+     * @param outputStream where to print the game
+     */
+    public BoxShogi(GameFile gameFile, PrintStream outputStream) {
+        this(gameFile.getHeader(), outputStream);
+        this.moveSource = gameFile;
     }
 
     /**
      * Public function to run the game in file mode.
+     * @throws IOException If a move cannot be read, IOException would be triggerd.
      */
-    public void runGameInFileMode() {
+    public void runGameInFileMode() throws IOException {
         if (modeFlag != 0) {
             outStream.println("You cannot call run game on the game object in interactive mode!");
         }
-        // Run move;
+        // Run move, reading the next one only when the game goes on.
         examineIsDriveInCheck(false);
-        for (String eachMove : moves) {
-            if (!winMessage.equals("") || turnNumber == MAX_TURN) {
+        while (winMessage.equals("") && turnNumber != MAX_TURN) {
+            String[] eachMove = moveSource.nextMove();
+            if (eachMove == null) {
                 break;
             }
-            this.availableMoves.clear();
-            playerStatus.get(lowerTurn).setIsInCheck(false);
+            clearAvailableMoves();
+            players[Bitboards.side(lowerTurn)].setIsInCheck(false);
             handleUserInput(eachMove);
             lowerTurn = !lowerTurn;
             examineIsDriveInCheck(false);
@@ -83,29 +110,6 @@ public class BoxShogi {
         outStream.print("\n");
     }
 
-    /**
-     * Function that initialize the board
-     * 
-     * @param initialPositions all positions needed to be initialed in game board
-     *                         before moves
-     */
-    private void initialEmptyBoard(List<Utils.InitialPosition> initialPositions) {
-        for (Utils.InitialPosition eachPosition : initialPositions) {
-            String[] splited = eachPosition.toString().split(" ");
-            String name = splited[0];
-            String location = splited[1];
-            Piece piece = new Piece(name, Character.isLowerCase(name.charAt(name.length() - 1)));
-            AbstractMap.SimpleEntry<Integer, Integer> colRowPair = parseStringLocationToColRow(location);
-            int col = colRowPair.getKey();
-            int row = colRowPair.getValue();
-            this.gameBoard.placePieceOnBoard(col, row, piece);
-            playerStatus.get(piece.getIsLower()).addAPiecePosition(piece.getName(), col, row);
-            if (piece.getName().equalsIgnoreCase("d")) {
-                playerStatus.get(piece.getIsLower()).setDrivePosition(colRowPair);
-            }
-        }
-    }
-
     /** <---------------------- Interactive mode only functions ----------------------> **/
 
     public BoxShogi(InputStream inputStream, PrintStream outputStream, int mode) {
@@ -113,17 +117,30 @@ public class BoxShogi {
         this.endGameFlag = 0;
         this.exitGameFlag = 0;
         this.winMessage = "";
-        this.previewMove = "";
+        this.previewMove = new StringBuilder();
         this.errorMessage = "";
         this.lowerTurn = true;
         this.outStream = outputStream;
         this.gameBoard = new Board(false);
-        this.playerStatus = new HashMap<>();
-        this.availableMoves = new LinkedList<>();
-        this.playerStatus = gameBoard.getPlayerStatus();
-        this.playerStatus.get(lowerTurn).setCaptures(new LinkedList<>());
-        this.playerStatus.get(!lowerTurn).setCaptures(new LinkedList<>());
+        this.moveBuffer = new int[MoveGenerator.MAX_MOVES];
+        this.availableMoves = new int[MoveGenerator.MAX_MOVES];
+        this.availableMoveSet = new long[Move.CODE_COUNT / Long.SIZE];
+        this.players = gameBoard.getPlayers();
+        this.gameBoard.setCaptures(lowerTurn, new LinkedList<>());
+        this.gameBoard.setCaptures(!lowerTurn, new LinkedList<>());
         this.bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
+        this.computerPlayers = new ComputerPlayer[2];
+        this.history.push(gameBoard.getKey(), gameBoard.isInCheck(lowerTurn));
+    }
+
+    /**
+     * Function that lets a computer player play one side in interactive mode.
+     *
+     * @param isLower  whether the computer plays lower player
+     * @param computer the computer player, or null to read that side from input again
+     */
+    public void setComputerPlayer(boolean isLower, ComputerPlayer computer) {
+        computerPlayers[Bitboards.side(isLower)] = computer;
     }
 
     /**
@@ -148,22 +165,93 @@ public class BoxShogi {
                 break;
             }
 
-            // Read in input and handle it.
-            System.out.print(" ");
-            String userInput = bufferedReader.readLine().trim();
+            // Read in input, or let the computer choose, and handle it.
+            String userInput = readNextCommand();
             boolean inputValid = handleUserInput(userInput);
 
             // If input is valid, now, it is the turn of another player.
             if (inputValid) {
                 lowerTurn = !lowerTurn;
-                availableMoves.clear();
+                clearAvailableMoves();
             }
         }
             
     }
 
+    /**
+     * Function that gets the next command, from the computer player of the side to
+     * move if there is one and from input otherwise.
+     *
+     * @return the command, in the same format a player types
+     * @throws IOException If an error occured in readline, IOException would be triggerd.
+     */
+    private String readNextCommand() throws IOException {
+        ComputerPlayer computer = computerPlayers[Bitboards.side(lowerTurn)];
+        if (computer == null) {
+            outStream.print(" ");
+            outStream.flush();
+            String line = bufferedReader.readLine();
+            // The end of input, as when a client disconnects, ends the game like exit.
+            return line == null ? "exit" : line.trim();
+        }
+
+        outStream.println();
+        gameBoard.setLowerTurn(lowerTurn);
+        int move = computer.selectMove(gameBoard, MAX_TURN - turnNumber, outStream);
+        String command = move == Move.NONE ? "exit" : Move.toString(move);
+        outStream.println(players[Bitboards.side(lowerTurn)].getPlayerName() + "> " + command);
+        return command;
+    }
+
     /** <----------------------  Both mode sharing functions ----------------------> **/
 
+    /**
+     * Function that sets what happens when a position repeats.
+     *
+     * @param rule the rule, RepetitionRule.STRICT by default
+     */
+    public void setRepetitionRule(RepetitionRule rule) {
+        repetitionRule = rule;
+    }
+
+    /**
+     * Function that sets an endgame tablebase to consult. While it holds the
+     * position, the status before each prompt tells who mates in how many plies
+     * and the best move.
+     *
+     * @param tablebase the table, or null for none
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Position history getter.
+     *
+     * @return every position of the game so far, the current one last
+     */
+    PositionHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Function that tells who won, once the game is over.
+     *
+     * @return 1 if lower player won, -1 if UPPER player won, 0 for a tie or an unfinished game
+     */
+    int getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Game board getter.
+     *
+     * @return the board the game is played on
+     */
+    Board getGameBoard() {
+        return gameBoard;
+    }
+
     /**
      * Function that shows current game status
      * Example:
@@ -187,40 +275,108 @@ public class BoxShogi {
         }
 
         // Build guaranteed message.
-        String gameStatusMessage = previewMove + "\n"
-                + gameBoard.toString() + "\n"
-                + "Captures UPPER: " + String.join(" ", playerStatus.get(false).getCaptures()) + "\n"
-                + "Captures lower: " + String.join(" ", playerStatus.get(true).getCaptures()) + "\n\n";
+        StringBuilder message = statusMessage;
+        message.setLength(0);
+        message.append(previewMove).append('\n');
+        gameBoard.appendTo(message);
+        message.append("\nCaptures UPPER: ");
+        players[Bitboards.side(false)].getHand().appendTo(message);
+        message.append("\nCaptures lower: ");
+        players[Bitboards.side(true)].getHand().appendTo(message);
+        message.append("\n\n");
 
         // If win message has been set, that is when there is a winner, we add winner on to message.
         if (!winMessage.equals("")) {
-            gameStatusMessage += winMessage;
+            message.append(winMessage);
 
         // If game reaches the max_turn with a tie game, we add tie game to message.
-        } else if (turnNumber == MAX_TURN && !playerStatus.get(lowerTurn).getIsInCheck()) {
-            gameStatusMessage += "Tie game.  Too many moves.";
+        } else if (turnNumber >= MAX_TURN && !players[Bitboards.side(lowerTurn)].getIsInCheck()) {
+            message.append("Tie game.  Too many moves.");
+            endGameFlag = 1;
 
         // If player is in check, 
         } else {
-            String playerName = playerStatus.get(lowerTurn).getPlayerName();
-            String opponentName = playerStatus.get(!lowerTurn).getPlayerName();
+            String playerName = players[Bitboards.side(lowerTurn)].getPlayerName();
+            String opponentName = players[Bitboards.side(!lowerTurn)].getPlayerName();
             // If player has no available moves to move out or checkmate. We add other player win to message.
-            if (playerStatus.get(lowerTurn).getIsInCheck() && availableMoves.size() == 0) {
-                gameStatusMessage += opponentName + " player wins.  Checkmate.";
+            if (players[Bitboards.side(lowerTurn)].getIsInCheck() && availableMoveCount == 0) {
+                message.append(opponentName).append(" player wins.  Checkmate.");
+                outcome = lowerTurn ? -1 : 1;
+                endGameFlag = 1;
             // If there is avaliable moves, we show add them to message.
             } else {
-                if (availableMoves.size() != 0) {
-                    gameStatusMessage += playerName + " player is in check!\n";
-                    gameStatusMessage += "Available moves:\n" + String.join("\n", availableMoves);
-                    gameStatusMessage += "\n";
+                if (availableMoveCount != 0) {
+                    message.append(playerName).append(" player is in check!\n");
+                    message.append("Available moves:\n");
+                    for (int i = 0; i < availableMoveCount; i++) {
+                        Move.appendTo(message, availableMoves[i]);
+                        message.append('\n');
+                    }
                 }
+                // If the tablebase holds the position, add its answer.
+                appendTablebaseAnswer(message);
                 // Show player before ask for input.
-                gameStatusMessage += playerName + ">";
+                message.append(playerName).append('>');
             }
         }
 
         // Shew our builted message to player.
-        out.print(gameStatusMessage);
+        printMessage(out, message);
+    }
+
+    /**
+     * Function that adds the result and the best move of the tablebase to a
+     * message, if a tablebase is set and holds the position. The move limit is
+     * not taken into account.
+     *
+     * @param message the message to add to
+     */
+    private void appendTablebaseAnswer(StringBuilder message) {
+        if (tablebase == null) {
+            return;
+        }
+        gameBoard.setLowerTurn(lowerTurn);
+        int score = tablebase.probe(gameBoard);
+        if (score == Tablebase.NOT_FOUND) {
+            return;
+        }
+        message.append("Tablebase: ");
+        if (score == 0) {
+            message.append("draw.");
+        } else {
+            int plies = Searcher.MATE - Math.abs(score);
+            message.append(players[Bitboards.side(score > 0 ? lowerTurn : !lowerTurn)].getPlayerName())
+                    .append(" player mates in ").append(plies).append(plies == 1 ? " ply." : " plies.");
+        }
+        int move = tablebase.bestMove(gameBoard, moveBuffer);
+        if (move != Move.NONE) {
+            message.append("  Best move: ");
+            Move.appendTo(message, move);
+        }
+        message.append('\n');
+    }
+
+    /**
+     * Function that prints a message through a reused byte buffer, so no String
+     * is made of it. Anything beyond ASCII goes through the stream's own encoding.
+     *
+     * @param out     the stream to print to
+     * @param message the text to print
+     */
+    private void printMessage(PrintStream out, CharSequence message) {
+        int length = message.length();
+        if (statusBytes.length < length) {
+            statusBytes = new byte[Math.max(length, statusBytes.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            char c = message.charAt(i);
+            if (c >= 0x80) {
+                out.print(message.toString());
+                return;
+            }
+            statusBytes[i] = (byte) c;
+        }
+        out.write(statusBytes, 0, length);
     }
 
     /**
@@ -231,7 +387,16 @@ public class BoxShogi {
      * @return whether the input is valid
      */
     private boolean handleUserInput(String userInpuString) {
-        String[] inputs = userInpuString.split(" ");
+        return handleUserInput(userInpuString.split(" "));
+    }
+
+    /**
+     * Function that handles the user input, already split into words.
+     *
+     * @param inputs arrays contains command and arguments from user
+     * @return whether the input is valid
+     */
+    private boolean handleUserInput(String[] inputs) {
         String command = inputs[0];
         boolean inputIsValid = false;
         if (command.equalsIgnoreCase("exit")) {
@@ -243,6 +408,11 @@ public class BoxShogi {
             inputIsValid |= handleDrop(inputs);
         }
 
+        // Remember the position the move led to, and end the game if it repeats too often.
+        if (inputIsValid) {
+            examineRepetition();
+        }
+
         // If input is invalid and we are in file mode, end game with illegal move.
         if (!inputIsValid && modeFlag == 0) {
             setWinMessage("Illegal move.");
@@ -250,8 +420,17 @@ public class BoxShogi {
         }
 
         // Update player pre move message
-        previewMove = playerStatus.get(lowerTurn).getPlayerName() + " player action: "; 
-        previewMove += String.join(" ", Arrays.asList(inputs));
+        if (previewMove == null) {
+            previewMove = new StringBuilder();
+        }
+        previewMove.setLength(0);
+        previewMove.append(players[Bitboards.side(lowerTurn)].getPlayerName()).append(" player action: ");
+        for (int i = 0; i < inputs.length; i++) {
+            if (i > 0) {
+                previewMove.append(' ');
+            }
+            previewMove.append(inputs[i]);
+        }
 
         // Increment turn
         turnNumber++;
@@ -266,34 +445,21 @@ public class BoxShogi {
      * @return a boolean indicating whether this move should be executed
      */
     private boolean handleMove(String[] inputs) {
-        // Check input format.
-        if ((!(inputs.length == 4 && inputs[3].equalsIgnoreCase("promote"))
-                && inputs.length != 3)
-                || !(inputs[1].matches("[a-eA-E]\\d") && inputs[2].matches("[a-eA-E]\\d"))) {
+        // Check input format, and parse the squares the piece moves from and to.
+        if (!(inputs.length == 4 && inputs[3].equalsIgnoreCase("promote")) && inputs.length != 3) {
             errorMessage = InteractiveMessage.printInvalidInput();
             return false;
         }
-
-        // Parse input from user.
-        String locationToBeMove = inputs[1];
-        String locationMoveTo = inputs[2];
-        AbstractMap.SimpleEntry<Integer, Integer> colRowPair = parseStringLocationToColRow(locationToBeMove);
-        AbstractMap.SimpleEntry<Integer, Integer> newColRowPair = parseStringLocationToColRow(locationMoveTo);
-
-        // If user input location is not valid, ask for input again.
-        // Otherwise, get the point.
-        if (colRowPair == null || newColRowPair == null) {
+        int from = Move.parseSquare(inputs[1]);
+        int to = Move.parseSquare(inputs[2]);
+        if (from < 0 || to < 0) {
             errorMessage = InteractiveMessage.printInvalidInput();
             return false;
         }
-        
+
         // Get actual information from game board
-        int col = colRowPair.getKey();
-        int row = colRowPair.getValue();
-        Piece pieceToMove = gameBoard.getPiece(col, row);
-        int newCol = newColRowPair.getKey();
-        int newRow = newColRowPair.getValue();
-        Piece pieceOnTargetLocation = gameBoard.getPiece(newCol, newRow);
+        Piece pieceToMove = gameBoard.getPiece(from);
+        Piece pieceOnTargetLocation = gameBoard.getPiece(to);
 
         // Check if there a piece in given position.
         if (pieceToMove == null) {
@@ -309,7 +475,7 @@ public class BoxShogi {
         }
 
         // Check if the player try to capture his our piece.
-        if (!(newCol == col && newRow == row) && pieceOnTargetLocation != null &&
+        if (from != to && pieceOnTargetLocation != null &&
                 ((pieceOnTargetLocation.getIsLower() && lowerTurn)
                         || (!pieceOnTargetLocation.getIsLower() && !lowerTurn))) {
             errorMessage = InteractiveMessage.printCaptureOwnPiece();
@@ -317,54 +483,30 @@ public class BoxShogi {
         }
 
         // If the player is in check, then the move must be in the available move.
-        if (playerStatus.get(lowerTurn).getIsInCheck() && !availableMoves.contains("move " + inputs[1] + " " + inputs[2])) {
+        if (players[Bitboards.side(lowerTurn)].getIsInCheck() && !isAvailableMove(Move.move(from, to, false))) {
             errorMessage = InteractiveMessage.printInCheck();
             return false;
         }
 
         // Check is the move possible or not.
-        if (checkMoveValid(col, row, newCol, newRow, lowerTurn, inputs.length == 4)) {
-            if (pieceOnTargetLocation != null && !(newCol == col && newRow == row)) {
-                // Capture piece that in target location.
-                String pieceName = pieceOnTargetLocation.getName();
-                playerStatus.get(lowerTurn).addCaptures(pieceName.substring(pieceName.length() - 1));
-                playerStatus.get(!lowerTurn).removeAPiecePosition(pieceName);
-            }
-
-            // Move current piece to a new position.
-            String pieceToMoveName = pieceToMove.getName();
-            gameBoard.removePieceFromBoard(col, row);
-            gameBoard.placePieceOnBoard(newCol, newRow, pieceToMove);
-            playerStatus.get(lowerTurn).removeAPiecePosition(pieceToMoveName);
-
-            // Promote piece if user asked.
-            if (inputs.length == 4 && !pieceToMove.getIsPromoted()) {
-                pieceToMove.promotedPiece();
-            }
+        if (!checkMoveValid(from, to, lowerTurn, inputs.length == 4)) {
+            errorMessage = InteractiveMessage.printCannotMove();
+            return false;
+        }
 
-            // Force preview to be promoted if it reach promotion zone.
-            if (pieceToMoveName.equalsIgnoreCase("p") && ((lowerTurn && newRow == 4) || (!lowerTurn && newRow == 0))) {
-                pieceToMove.promotedPiece();
-            }
+        // Promote piece if user asked, and force preview to be promoted if it reach promotion zone.
+        boolean promote = inputs.length == 4
+                || (pieceToMove.getType() == Piece.PREVIEW
+                        && ((lowerTurn && Bitboards.row(to) == 4) || (!lowerTurn && Bitboards.row(to) == 0)));
 
-            // Update piece pisitions in player status.
-            playerStatus.get(lowerTurn).addAPiecePosition(pieceToMoveName, newCol, newRow);
-            if (pieceToMoveName.equalsIgnoreCase("d")) {
-                playerStatus.get(lowerTurn).setDrivePosition(newColRowPair);
-            }
+        // Move current piece to a new position, capturing the piece on it.
+        gameBoard.setLowerTurn(lowerTurn);
+        gameBoard.makeMove(Move.move(from, to, promote));
 
-            // Check if drive is in check after move.
-            if (examineIsDriveInCheck(true)) {
-                gameBoard.removePieceFromBoard(newCol, newRow);
-                gameBoard.placePieceOnBoard(col, row, pieceToMove);
-                if (pieceOnTargetLocation != null) {
-                    playerStatus.get(!lowerTurn).addAPiecePosition(pieceOnTargetLocation.getName(), col, row);
-                }
-                errorMessage = InteractiveMessage.printCheckAfterMove();
-                return false;
-            }
-        } else {
-            errorMessage = InteractiveMessage.printCannotMove();
+        // Check if drive is in check after move, if so take the move back.
+        if (examineIsDriveInCheck(true)) {
+            gameBoard.unmakeMove();
+            errorMessage = InteractiveMessage.printCheckAfterMove();
             return false;
         }
 
@@ -377,204 +519,112 @@ public class BoxShogi {
      * @param inputs arrays contains command and arguments from user
      */
     private boolean handleDrop(String[] inputs) {
-        // Check input format.
-        if (inputs.length != 3
-                || !(inputs[1].matches("[a-z]") && inputs[2].matches("[a-eA-E]\\d"))) {
+        // Check input format, and parse the piece and the square it is dropped on.
+        if (inputs.length != 3 || inputs[1].length() != 1 || inputs[1].charAt(0) < 'a' || inputs[1].charAt(0) > 'z') {
             errorMessage = InteractiveMessage.printInCheck();
             return false;
         }
-
-        // Store name and location and piece
-        String pieceName = inputs[1];
-        String location = inputs[2];
-        Piece pieceToBeDrop = new Piece(pieceName, lowerTurn);
-
-        // Parse location
-        AbstractMap.SimpleEntry<Integer, Integer> colRowPair = parseStringLocationToColRow(location);
-        if (colRowPair == null) {
+        int type = Piece.typeOf(inputs[1].charAt(0));
+        int to = Move.parseSquare(inputs[2]);
+        if (to < 0) {
             errorMessage = InteractiveMessage.printInCheck();
             return false;
         }
-        int colToBePlace = colRowPair.getKey();
-        int rowToBePlace = colRowPair.getValue();
 
         // Check is the piece has been capture
-        if (!playerStatus.get(lowerTurn).getCaptures().contains(pieceToBeDrop.getName())) {
+        if (type < 0 || type > Piece.PREVIEW || gameBoard.getHandCount(lowerTurn, type) == 0) {
             errorMessage = InteractiveMessage.printNoPieceInCapture();
             return false;
         }
 
         // Check is there a piece on the position to be placed
-        if ((this.gameBoard.getPiece(colToBePlace, rowToBePlace) != null)) {
+        if (gameBoard.getPiece(to) != null) {
             errorMessage = InteractiveMessage.printDropOnAPiece();
             return false;
         }
 
         // Check if the piece is Preview and it is being placed in pomotion zone.
-        if (pieceName.equalsIgnoreCase("p") &&
-                ((lowerTurn && rowToBePlace == 4)
-                        || (!lowerTurn && rowToBePlace == 0))) {
+        if (type == Piece.PREVIEW &&
+                ((lowerTurn && Bitboards.row(to) == 4)
+                        || (!lowerTurn && Bitboards.row(to) == 0))) {
             errorMessage = InteractiveMessage.printDropPreviewOnPromotion();
             return false;
         }
 
         // Check if two preview is in same column
-        AbstractMap.SimpleEntry<Integer, Integer> previewPosition = playerStatus.get(lowerTurn).getPiecePosition("p");
-        if (previewPosition != null && pieceName.equalsIgnoreCase("p") && colToBePlace == previewPosition.getKey()) {
+        int previews = gameBoard.getPieceBitboard(lowerTurn, Piece.PREVIEW);
+        if (type == Piece.PREVIEW && (previews & Bitboards.colMask(Bitboards.col(to))) != 0) {
             errorMessage = InteractiveMessage.printDropTwoPreviewInSameColumn();
             return false;
         }
 
         // If the player is in check, then the drop must be in the available move.
-        if (playerStatus.get(lowerTurn).getIsInCheck() && !availableMoves.contains("drop " + inputs[1] + " " + inputs[2])) {
+        if (players[Bitboards.side(lowerTurn)].getIsInCheck() && !isAvailableMove(Move.drop(type, to))) {
             errorMessage = InteractiveMessage.printInCheck();
             return false;
         }
 
         // Check if the piece is Preview and it raise a checkmate
-        if (pieceName.equalsIgnoreCase("p")) {
-            // Try to place preview first
-            this.gameBoard.placePieceOnBoard(colToBePlace, rowToBePlace, pieceToBeDrop);
-            playerStatus.get(lowerTurn).addAPiecePosition(pieceToBeDrop.getName(), colToBePlace, rowToBePlace);
-            // Check if other player in chackmate
-            lowerTurn = !lowerTurn;
-            if (examineIsDriveInCheck(false) && availableMoves.size() == 0) {
-                this.gameBoard.removePieceFromBoard(colToBePlace, rowToBePlace);
-                lowerTurn = !lowerTurn;
-                playerStatus.get(lowerTurn).removeAPiecePosition(pieceToBeDrop.getName());
-                errorMessage = InteractiveMessage.printDropPreviewCauseCheckMate();
-                return false;
-            }
-            // Change the turn back.
-            lowerTurn = !lowerTurn;
+        if (type == Piece.PREVIEW && MoveGenerator.isPreviewDropMate(gameBoard, lowerTurn, to)) {
+            errorMessage = InteractiveMessage.printDropPreviewCauseCheckMate();
+            return false;
         }
 
-        // Drop piece on board
-        this.gameBoard.placePieceOnBoard(colToBePlace, rowToBePlace, pieceToBeDrop);
-        playerStatus.get(lowerTurn).addAPiecePosition(pieceToBeDrop.getName(), colToBePlace, rowToBePlace);
+        // Drop piece on board, removing it from captures.
+        gameBoard.setLowerTurn(lowerTurn);
+        gameBoard.makeMove(Move.drop(type, to));
 
-        // Remove from captures
-        playerStatus.get(lowerTurn).removeCaptures(pieceToBeDrop.getName());
+        // A drop that leaves the drive in check does not answer the check.
+        if (examineIsDriveInCheck(true)) {
+            gameBoard.unmakeMove();
+            errorMessage = InteractiveMessage.printInCheck();
+            return false;
+        }
         return true;
     }
 
     /**
      * Function that finds all possible moves when player is in check.
-     * 
-     * @param lowerTurn boolean state whether is lower player's turn
+     *
+     * The moves come from MoveGenerator and are kept the way a player types
+     * them, without promotion, once each and in alphabetical order of their
+     * commands.
      */
-    private void findAvailableMoves(List<String> pieceNameCheckPlayer, int driveCol, int driveRow) {
-        // Curreny player is not in check.
-        if (pieceNameCheckPlayer.size() == 0) {
-            return;
-        }
-
-        // Current player's drive in check by one piece from the opponent.
-        if (pieceNameCheckPlayer.size() == 1) {
-            AbstractMap.SimpleEntry<Integer, Integer> attackerPosition = playerStatus.get(!lowerTurn)
-                    .getPiecePosition(pieceNameCheckPlayer.get(0));
-            int attackerCol = attackerPosition.getKey();
-            int attackerRow = attackerPosition.getValue();
-
-            // Drop captured piece between the attacker and our drive.
-            int colIncrement = Integer.signum(driveCol - attackerCol);
-            int rowIncrement = Integer.signum(driveRow - attackerRow);
-            List<String> captures = playerStatus.get(lowerTurn).getCaptures();
-            for (String eachCapture : captures) {
-                if (eachCapture.length() == 0) {
-                    continue;
-                }
-                int currentCol = attackerCol + colIncrement;
-                int currentRow = attackerRow + rowIncrement;
-                while (!(currentCol == driveCol && currentRow == driveRow)) {
-                    String locationDropTo = convertPositionColRowToString(currentCol, currentRow);
-                    this.availableMoves.add("drop " + eachCapture.toLowerCase() + " " + locationDropTo);
-                    currentCol += colIncrement;
-                    currentRow += rowIncrement;
-                }
+    void findAvailableMoves() {
+        clearAvailableMoves();
+        gameBoard.setLowerTurn(lowerTurn);
+        int count = MoveGenerator.generateLegalMoves(gameBoard, moveBuffer);
+        for (int i = 0; i < count; i++) {
+            int move = moveBuffer[i];
+            // Promotion is asked for after the move is chosen, so list each move once.
+            if (!Move.isDrop(move)) {
+                move = Move.move(Move.from(move), Move.to(move), false);
             }
-
-            // Move current piece to the position between drive and attacker.
-            int currentCol = attackerCol + colIncrement;
-            int currentRow = attackerRow + rowIncrement;
-            while (!(currentCol == driveCol && currentRow == driveRow)) {
-                for (AbstractMap.SimpleEntry<Integer, Integer> eachPiecePosition : playerStatus.get(lowerTurn)
-                        .getPiecePosition().values()) {
-                    int eachPieceCol = eachPiecePosition.getKey();
-                    int eachPieceRow = eachPiecePosition.getValue();
-                    if (gameBoard.getPiece(eachPieceCol, eachPieceRow).getName().equalsIgnoreCase("d")) {
-                        continue;
-                    }
-                    if (checkMoveValid(eachPieceCol, eachPieceRow, currentCol, currentRow, lowerTurn, false)) {
-                        String locationToBeMove = convertPositionColRowToString(eachPieceCol, eachPieceRow);
-                        String locationMoveTo = convertPositionColRowToString(currentCol, currentRow);
-                        this.availableMoves.add("move " + locationToBeMove + " " + locationMoveTo);
-                    }
-                }
-                currentCol += colIncrement;
-                currentRow += rowIncrement;
+            if (isAvailableMove(move)) {
+                continue;
             }
-
-            // Use our piece to capture the attacker
-            for (AbstractMap.SimpleEntry<Integer, Integer> eachPiecePosition : playerStatus.get(lowerTurn)
-                    .getPiecePosition().values()) {
-                if (eachPiecePosition == null) {
-                    continue;
-                }
-                int eachPieceCol = eachPiecePosition.getKey();
-                int eachPieceRow = eachPiecePosition.getValue();
-                if (checkMoveValid(eachPieceCol, eachPieceRow, attackerCol, attackerRow, lowerTurn, false)
-                        && !(eachPieceCol == driveCol && eachPieceRow == driveRow)) {
-                    // Try to move the piece first and check would drive be in check. 
-                    Piece pieceToTry = gameBoard.getPiece(eachPieceCol, eachPieceRow);
-                    Piece pieceToCapture = gameBoard.getPiece(attackerCol, attackerRow);
-                    gameBoard.removePieceFromBoard(eachPieceCol, eachPieceRow);
-                    gameBoard.placePieceOnBoard(attackerCol, attackerRow, pieceToTry);
-                    playerStatus.get(!lowerTurn).removeAPiecePosition(pieceToCapture.getName());
-
-                    // Check would drive be in check.
-                    boolean inCheck = examineIsDriveInCheck(true);
-
-                    // Put piece back.
-                    gameBoard.placePieceOnBoard(eachPieceCol, eachPieceRow, pieceToTry);
-                    gameBoard.placePieceOnBoard(attackerCol, attackerRow, pieceToCapture);
-                    playerStatus.get(!lowerTurn).addAPiecePosition(pieceToCapture.getName(), attackerCol, attackerRow);
-
-                    // If we find a piece that can capture the attacker, add it to our avaliable moves.
-                    if (!inCheck) {
-                        String locationToBeMove = convertPositionColRowToString(eachPieceCol, eachPieceRow);
-                        String locationMoveTo = convertPositionColRowToString(attackerCol, attackerRow);
-                        this.availableMoves.add("move " + locationToBeMove + " " + locationMoveTo);
-                    }
-                }
+            availableMoveSet[move >>> 6] |= 1L << move;
+
+            // Insert in order, the list is short.
+            int key = Move.notationKey(move);
+            int index = availableMoveCount++;
+            while (index > 0 && Move.notationKey(availableMoves[index - 1]) > key) {
+                availableMoves[index] = availableMoves[index - 1];
+                index--;
             }
+            availableMoves[index] = move;
         }
+    }
 
-        // Try to move our drive around.
-        List<AbstractMap.SimpleEntry<Integer, Integer>> drivePossibleMove = getDrivePossibleMove(driveCol, driveRow);
-        gameBoard.removePieceFromBoard(driveCol, driveRow);
-        for (AbstractMap.SimpleEntry<Integer, Integer> eachPossibleMove : drivePossibleMove) {
-            int colToMove = eachPossibleMove.getKey();
-            int rowToMove = eachPossibleMove.getValue();
-            // For all possible moves of drive, examine would it be in check after such movement.
-            boolean safe = true;
-            for (AbstractMap.SimpleEntry<Integer, Integer> eachPiecePositionAttacker : playerStatus
-                    .get(!lowerTurn)
-                    .getPiecePosition().values()) {
-                int eachPieceCol = eachPiecePositionAttacker.getKey();
-                int eachPieceRow = eachPiecePositionAttacker.getValue();
-                if (checkMoveValid(eachPieceCol, eachPieceRow, colToMove, rowToMove, !lowerTurn, false)
-                        && !(eachPieceCol == colToMove && eachPieceRow == rowToMove)) {
-                    safe = false;
-                }
-            }
-            if (safe) {
-                String locationToBeMove = convertPositionColRowToString(driveCol, driveRow);
-                String locationMoveTo = convertPositionColRowToString(colToMove, rowToMove);
-                this.availableMoves.add("move " + locationToBeMove + " " + locationMoveTo);
-            }
+    private boolean isAvailableMove(int move) {
+        return (availableMoveSet[move >>> 6] & (1L << move)) != 0;
+    }
+
+    private void clearAvailableMoves() {
+        for (int i = 0; i < availableMoveCount; i++) {
+            availableMoveSet[availableMoves[i] >>> 6] = 0L;
         }
-        gameBoard.placePieceOnBoard(driveCol, driveRow, new Piece("d", lowerTurn));
+        availableMoveCount = 0;
     }
 
     /**
@@ -583,183 +633,109 @@ public class BoxShogi {
      * @param checkMove true if check after moving drive, false otherwise.
      * @return a boolean indicate is current player in check on that temporary board.
      */
-    private boolean examineIsDriveInCheck(boolean checkMove) {
-        // Get drive position.
-        AbstractMap.SimpleEntry<Integer, Integer> drivePosition = playerStatus.get(lowerTurn).getDrivePosition();
-        int driveCol = drivePosition.getKey();
-        int driveRow = drivePosition.getValue();
-
-        // Store all piece that checking current player.
-        List<String> pieceNameCheckPlayer = new ArrayList<>();
-        for (AbstractMap.SimpleEntry<Integer, Integer> eachPiecePosition : playerStatus.get(!lowerTurn)
-                .getPiecePosition().values()) {
-            if (eachPiecePosition == null) {
-                continue;
-            }
-            int eachPieceCol = eachPiecePosition.getKey();
-            int eachPieceRow = eachPiecePosition.getValue();
-            if (checkMoveValid(eachPieceCol, eachPieceRow, driveCol, driveRow, lowerTurn, false)) {
-                String pieceName = gameBoard.getPiece(eachPieceCol, eachPieceRow).getName();
-                pieceNameCheckPlayer.add(pieceName);
-            }
+    boolean examineIsDriveInCheck(boolean checkMove) {
+        // Without a drive there is nothing to check.
+        if (gameBoard.getDriveSquare(lowerTurn) < 0) {
+            return false;
         }
 
-        // If there is attacker that can capture the drive, drive is currently in check.
-        boolean currentInCheck = pieceNameCheckPlayer.size() != 0;
+        // The board keeps the squares the opponent attacks, so check is a lookup.
+        boolean currentInCheck = gameBoard.isInCheck(lowerTurn);
 
         // If needed, find avaliable moves
         if (!checkMove) {
-            playerStatus.get(lowerTurn).setIsInCheck(currentInCheck);
-            if (availableMoves.size() == 0) {
-                findAvailableMoves(pieceNameCheckPlayer, driveCol, driveRow);
+            players[Bitboards.side(lowerTurn)].setIsInCheck(currentInCheck);
+            if (currentInCheck && availableMoveCount == 0) {
+                findAvailableMoves();
             }
         }
         return currentInCheck;
     }
 
     /**
-     * Funstion that gets all possible positions current drive could be moved to.
-     * 
-     * @param col the col of current drive
-     * @param row the row of current drive
-     * @return a list of integer pairs indicating all possible position could be
-     *         moved from current drive
+     * Function that adds the position after a move of the current player to the
+     * history and applies the repetition rule to it.
      */
-    private List<AbstractMap.SimpleEntry<Integer, Integer>> getDrivePossibleMove(int col, int row) {
-        List<AbstractMap.SimpleEntry<Integer, Integer>> possibleMove = new ArrayList<>();
-        for (int possiblCol = col - 1; possiblCol <= col + 1; possiblCol++) {
-            for (int possiblRow = row - 1; possiblRow <= row + 1; possiblRow++) {
-                // When we are looking for a possible move, we want drive been actually movec.
-                if (possiblCol == col && possiblRow == row) {
-                    continue;
-                }
-                 // If the piece on that destination belongs to player, we cannot move drive
-                if (gameBoard.getPiece(possiblCol, possiblRow) != null
-                        && ((!gameBoard.getPiece(possiblCol, possiblRow).getIsLower() && !lowerTurn)
-                                || (gameBoard.getPiece(possiblCol, possiblRow).getIsLower() && lowerTurn))) {
-                    continue;
-                }
-                if (possiblCol >= 0 && possiblCol <= 4 && possiblRow >= 0 && possiblRow <= 4) {
-                    possibleMove.add(new AbstractMap.SimpleEntry<>(possiblCol, possiblRow));
-                }
+    private void examineRepetition() {
+        history.push(gameBoard.getKey(), gameBoard.isInCheck(!lowerTurn));
+        if (repetitionRule == RepetitionRule.STRICT || history.getRepetitions() < PositionHistory.REPETITIONS) {
+            return;
+        }
+
+        // Under the perpetual check rule, the side that checked all along loses.
+        if (repetitionRule == RepetitionRule.PERPETUAL_CHECK) {
+            if (history.isPerpetualCheck(true)) {
+                setWinMessage(!lowerTurn, "Perpetual check.");
+                return;
+            }
+            if (history.isPerpetualCheck(false)) {
+                setWinMessage(lowerTurn, "Perpetual check.");
+                return;
             }
         }
-        return possibleMove;
+        winMessage = "Tie game.  Fourfold repetition.\n";
+        outcome = 0;
+        endGameFlag = 1;
     }
 
     /**
-     * Function that sets the win message.
+     * Function that sets the win message, the opponent of the current player winning.
      * 
      * @param message message to be shown
      */
     private void setWinMessage(String message) {
-        winMessage = playerStatus.get(!lowerTurn).getPlayerName()+ " player wins.  ";
+        setWinMessage(!lowerTurn, message);
+    }
+
+    /**
+     * Function that sets the win message.
+     *
+     * @param lowerWins whether lower player won
+     * @param message   message to be shown
+     */
+    private void setWinMessage(boolean lowerWins, String message) {
+        winMessage = players[Bitboards.side(lowerWins)].getPlayerName()+ " player wins.  ";
         winMessage += message + "\n";
+        outcome = lowerWins ? 1 : -1;
         endGameFlag = 1;
     }
 
     /**
-     * Function that checks is a move from a given location to a new given location
+     * Function that checks is a move from a given square to a new given square
      * is valid.
      * 
-     * @param col        the col of the position a piece will be moved from
-     * @param row        the row of the postition a piece will be moved from
-     * @param newCol     the new col of the position a piece will be moved to
-     * @param newRow     the new row of the position a piece will be moved to
+     * @param from       the square a piece will be moved from
+     * @param to         the square a piece will be moved to
      * @param lowerTurn  boolean indicating the player's turn. true means lowercase
      *                   player; false otherwise.
      * @param tryPromote boolean indicating if player tried to promote,. true means
      *                   yes; false otherwise
      * @return the boolean indicating is current move legally
      */
-    private boolean checkMoveValid(int col, int row, int newCol, int newRow, boolean lowerTurn, boolean tryPromote) {
+    boolean checkMoveValid(int from, int to, boolean lowerTurn, boolean tryPromote) {
         // Get pieceToMove
-        Piece pieceToMove = gameBoard.getPiece(col, row);
+        Piece pieceToMove = gameBoard.getPiece(from);
         if (pieceToMove == null) {
             return false;
         }
 
         // Check if it try to promote, player is actually moving to a promote zone.
+        int row = Bitboards.row(from);
+        int newRow = Bitboards.row(to);
         if (tryPromote && (pieceToMove.getIsPromoted()
-                || pieceToMove.getName().equalsIgnoreCase("d")
-                || pieceToMove.getName().equalsIgnoreCase("s")
+                || pieceToMove.getType() == Piece.DRIVE
+                || pieceToMove.getType() == Piece.SHIELD
                 || (lowerTurn && row != 4 && newRow != 4)
                 || (!lowerTurn && row != 0 && newRow != 0))) {
             return false;
         }
 
-        // Compute distance between col and newCol, row and newRow
-        int dCol = newCol - col;
-        int dRow = newRow - row;
-
-        // Get rule of current piece
-        if (checkIsThereAPieceInBetween(col, row, newCol, newRow)) {
-            return false;
-        }
-
-        // Now, we only need to check basic rule.
-        return pieceToMove.checkMoveFollowBasicRule(dCol, dRow);
-    }
-
-
-    /**
-     * Function that checks is there a piece between two location.
-     * 
-     * @param col    the col of the position a piece will be moved from
-     * @param row    the row of the postition a piece will be moved from
-     * @param newCol the new col of the position a piece will be moved to
-     * @param newRow the new row of the position a piece will be moved to
-     * @return boolean indicating whether there is a piece bewteen two location
-     */
-    private boolean checkIsThereAPieceInBetween(int col, int row, int newCol, int newRow) {
-        int colIncrement = Integer.signum(newCol - col);
-        int rowIncrement = Integer.signum(newRow - row);
-        int currentCol = col;
-        int currentRow = row;
-        while (!(currentCol == newCol && currentRow == newRow)
-                && currentCol >= 0 && currentCol <= 4
-                && currentRow >= 0 && currentRow <= 4) {
-            if (!(currentCol == col && currentRow == row)
-                    && !(currentCol == newCol && currentRow == newRow)
-                    && this.gameBoard.getPiece(currentCol, currentRow) != null) {
-                return true;
-            }
-            currentCol += colIncrement;
-            currentRow += rowIncrement;
-        }
-        return false;
-    }
-
-    /**
-     * Funtion that returns the Pair representing the col and row.
-     * 
-     * @param location string in form "[a-zA-Z]\\d" represting location
-     * @return the Pair representing the col and row
-     */
-    private AbstractMap.SimpleEntry<Integer, Integer> parseStringLocationToColRow(String location) {
-        if (location.length() == 2) {
-            int firstPart = location.charAt(0) - 'a';
-            int secondPart = Integer.valueOf(location.substring(1)) - 1;
-            if (firstPart < 0 || firstPart > 4 || secondPart < 0 || secondPart > 4) {
-                System.out.println("Invalid location in getPieceOnLocation!");
-                return null;
-            }
-            return new AbstractMap.SimpleEntry<>(firstPart, secondPart);
+        // Staying on the same square has always been accepted by the basic rules.
+        if (from == to) {
+            return true;
         }
-        System.out.println("Invalid location in getPieceOnLocation!");
-        return null;
-    }
 
-    /**
-     * Function that convert integer col, row into string representation in actual
-     * borad
-     * 
-     * @param col integer col index
-     * @param row integer row index
-     * @return the String representing location
-     */
-    private String convertPositionColRowToString(int col, int row) {
-        String location = String.valueOf((char) (col + (int) 'a')) + String.valueOf(row + 1);
-        return location;
+        // Now, we only need to look the destination up in the attack set of the piece.
+        return (gameBoard.attacksFrom(from) & Bitboards.bit(to)) != 0;
     }
-}
\ No newline at end of file
+}
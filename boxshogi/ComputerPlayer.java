@@ -0,0 +1,19 @@
+package boxshogi;
+
+import java.io.PrintStream;
+
+/**
+ * Interface of a computer player choosing the moves of one side.
+ */
+public interface ComputerPlayer {
+
+    /**
+     * Function that chooses a move for the side to move.
+     *
+     * @param board     the position, it must be left unchanged
+     * @param pliesLeft how many moves can still be played before the game is a tie
+     * @param out       where to print what the player found while thinking
+     * @return the encoded move, or Move.NONE if there is no legal move
+     */
+    int selectMove(Board board, int pliesLeft, PrintStream out);
+}
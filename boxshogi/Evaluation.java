@@ -0,0 +1,320 @@
+package boxshogi;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Class that scores positions for the search.
+ *
+ * Scores are in hundredths of a preview and seen from the side to move, so a
+ * positive score means the side to move is ahead.
+ *
+ * An evaluation is a set of weights: the value of each piece type on the board,
+ * promoted forms included; a piece-square table per type; the value of the
+ * first and of the second piece of a type in hand; and two drive safety terms,
+ * one per attack of the opponent on a square next to the drive and one per
+ * square next to it the drive could step to. Tables are written from the point
+ * of view of lower player, UPPER uses them with the board turned around.
+ *
+ * The board keeps the sum of the piece, square and hand values up to date as
+ * pieces come and go, see Board.getScore, so evaluating a position only adds
+ * the drive safety, read off the attack counts the board also keeps.
+ *
+ * Weights can be loaded from a text file of entries separated by white space,
+ * "#" starting a comment until the end of the line:
+ * "piece [name] [value]", the name like "n" or "+n";
+ * "hand [letter] [first] [second]";
+ * "square [name] [25 values]", row 5 first, a to e in each row, as the board prints;
+ * "drive_zone_attack [value]" and "drive_escape [value]".
+ * Entries left out keep their default.
+ */
+public final class Evaluation {
+
+    /** Number of pieces of a type in hand with their own value, later ones count as the last. */
+    private static final int HAND_SLOTS = 2;
+
+    /** Value of a piece on the board, indexed by type. */
+    private static final int[] PIECE_VALUES = { 0, 650, 550, 450, 400, 100, 950, 800, 450, 450 };
+
+    /** Value of a piece in hand, indexed by unpromoted type, a bit above the board value since it can go anywhere. */
+    private static final int[] HAND_VALUES = { 0, 720, 610, 500, 440, 115 };
+
+    /** Value of the second piece of a type in hand, as a share of the first in percent. */
+    private static final int SECOND_HAND_PERCENT = 90;
+
+    private static final int DRIVE_ZONE_ATTACK = -8;
+    private static final int DRIVE_ESCAPE = 4;
+
+    /** The weights boards use unless given others. */
+    public static final Evaluation DEFAULT = new Evaluation(PIECE_VALUES.clone(), defaultHandValues(),
+            defaultSquareValues(), DRIVE_ZONE_ATTACK, DRIVE_ESCAPE);
+
+    private final int[] pieceValues;
+    private final int[][] handValues;
+    private final int[][] squareValues;
+    private final int driveZoneAttack;
+    private final int driveEscape;
+
+    /** pieceScores[side][type][sq]: piece and square value, negated for UPPER. */
+    private final int[][][] pieceScores = new int[2][Piece.TYPE_COUNT][Bitboards.SQUARE_COUNT];
+
+    /** handScores[side][type][n]: value of the n-th piece of a type in hand, negated for UPPER. */
+    private final int[][][] handScores = new int[2][Piece.PREVIEW + 1][HAND_SLOTS + 1];
+
+    /**
+     * Constructor.
+     *
+     * @param pieceValues     value of a piece on the board, indexed by type
+     * @param handValues      value of the first and second piece in hand, indexed by unpromoted type
+     * @param squareValues    bonus of a piece on a square for lower player, indexed by type then square
+     * @param driveZoneAttack score per attack of the opponent next to the drive
+     * @param driveEscape     score per free, unattacked square next to the drive
+     */
+    private Evaluation(int[] pieceValues, int[][] handValues, int[][] squareValues, int driveZoneAttack,
+            int driveEscape) {
+        this.pieceValues = pieceValues;
+        this.handValues = handValues;
+        this.squareValues = squareValues;
+        this.driveZoneAttack = driveZoneAttack;
+        this.driveEscape = driveEscape;
+        for (int type = 0; type < Piece.TYPE_COUNT; type++) {
+            for (int sq = 0; sq < Bitboards.SQUARE_COUNT; sq++) {
+                pieceScores[Bitboards.LOWER][type][sq] = pieceValues[type] + squareValues[type][sq];
+                pieceScores[Bitboards.UPPER][type][sq] = -(pieceValues[type] + squareValues[type][flip(sq)]);
+            }
+        }
+        for (int type = 0; type <= Piece.PREVIEW; type++) {
+            for (int n = 1; n <= HAND_SLOTS; n++) {
+                handScores[Bitboards.LOWER][type][n] = handValues[type][n - 1];
+                handScores[Bitboards.UPPER][type][n] = -handValues[type][n - 1];
+            }
+        }
+    }
+
+    private static int[][] defaultHandValues() {
+        int[][] values = new int[Piece.PREVIEW + 1][HAND_SLOTS];
+        for (int type = 0; type <= Piece.PREVIEW; type++) {
+            values[type][0] = HAND_VALUES[type];
+            values[type][1] = HAND_VALUES[type] * SECOND_HAND_PERCENT / 100;
+        }
+        return values;
+    }
+
+    /**
+     * Function that builds the default piece-square tables: the drive loses a
+     * little for each row it leaves home, the preview gains for each row it
+     * advances, and the other pieces gain for being close to the center.
+     *
+     * @return the tables for lower player, indexed by type then square
+     */
+    private static int[][] defaultSquareValues() {
+        int[][] values = new int[Piece.TYPE_COUNT][Bitboards.SQUARE_COUNT];
+        for (int type = 0; type < Piece.TYPE_COUNT; type++) {
+            for (int sq = 0; sq < Bitboards.SQUARE_COUNT; sq++) {
+                int row = Bitboards.row(sq);
+                int centerDistance = Math.abs(Bitboards.col(sq) - 2) + Math.abs(row - 2);
+                if (type == Piece.DRIVE) {
+                    values[type][sq] = -6 * row;
+                } else if (type == Piece.PREVIEW) {
+                    values[type][sq] = 6 * row;
+                } else {
+                    values[type][sq] = 3 * (4 - centerDistance);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Function that turns a square around, to read the tables of lower player for UPPER.
+     *
+     * @param sq a square
+     * @return the square UPPER sees where lower player sees sq
+     */
+    private static int flip(int sq) {
+        return Bitboards.SQUARE_COUNT - 1 - sq;
+    }
+
+    /**
+     * Function that scores a position: the score the board keeps, plus the
+     * safety of both drives.
+     *
+     * @param board the position
+     * @return the score from the point of view of the side to move
+     */
+    public static int evaluate(Board board) {
+        Evaluation weights = board.getEvaluation();
+        int score = board.getScore() + weights.driveSafety(board, true) - weights.driveSafety(board, false);
+        return board.getLowerTurn() ? score : -score;
+    }
+
+    /**
+     * Function that scores the safety of the drive of a player.
+     *
+     * @param board   the position
+     * @param isLower whether the drive belongs to lower player
+     * @return the score for that player, 0 if the drive is not on the board
+     */
+    private int driveSafety(Board board, boolean isLower) {
+        int drive = board.getDriveSquare(isLower);
+        if (drive < 0) {
+            return 0;
+        }
+        int zone = Bitboards.stepAttacks(Bitboards.RULE_D, Bitboards.side(isLower), drive);
+        int attacked = board.getAttackMap(!isLower);
+        int attacks = 0;
+        for (int squares = zone & attacked; squares != 0; squares &= squares - 1) {
+            attacks += board.getAttackerCount(Integer.numberOfTrailingZeros(squares), !isLower);
+        }
+        int escapes = Integer.bitCount(zone & ~attacked & ~board.getSideBitboard(isLower));
+        return driveZoneAttack * attacks + driveEscape * escapes;
+    }
+
+    /**
+     * Function that returns the value of a piece on the board, used to order captures.
+     *
+     * @param type a type index
+     * @return the value of the type
+     */
+    public int pieceValue(int type) {
+        return pieceValues[type];
+    }
+
+    /**
+     * Function that returns what a piece on a square adds to the board score.
+     *
+     * @param side Bitboards.LOWER or Bitboards.UPPER
+     * @param type a type index
+     * @param sq   the square
+     * @return the piece and square value, negative for UPPER
+     */
+    int pieceScore(int side, int type, int sq) {
+        return pieceScores[side][type][sq];
+    }
+
+    /**
+     * Function that returns what a piece in hand adds to the board score.
+     *
+     * @param side Bitboards.LOWER or Bitboards.UPPER
+     * @param type an unpromoted type index
+     * @param n    which piece of the type it is, from 1
+     * @return the value of the n-th piece, negative for UPPER
+     */
+    int handScore(int side, int type, int n) {
+        return handScores[side][type][Math.min(n, HAND_SLOTS)];
+    }
+
+    /** <-------------------- Weights file --------------------> **/
+
+    /**
+     * Function that reads weights from a file, starting from the default ones.
+     *
+     * @param path the weights file
+     * @return the weights
+     * @throws IOException If the file cannot be read or an entry is not understood, IOException would be triggerd.
+     */
+    public static Evaluation load(String path) throws IOException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IOException("Cannot read weights file " + path, e);
+        }
+        List<String> tokens = new ArrayList<>();
+        for (String line : lines) {
+            int comment = line.indexOf('#');
+            for (String token : (comment >= 0 ? line.substring(0, comment) : line).trim().split("\\s+")) {
+                if (!token.isEmpty()) {
+                    tokens.add(token);
+                }
+            }
+        }
+
+        int[] pieceValues = DEFAULT.pieceValues.clone();
+        int[][] handValues = new int[Piece.PREVIEW + 1][];
+        for (int type = 0; type <= Piece.PREVIEW; type++) {
+            handValues[type] = DEFAULT.handValues[type].clone();
+        }
+        int[][] squareValues = new int[Piece.TYPE_COUNT][];
+        for (int type = 0; type < Piece.TYPE_COUNT; type++) {
+            squareValues[type] = DEFAULT.squareValues[type].clone();
+        }
+        int driveZoneAttack = DEFAULT.driveZoneAttack;
+        int driveEscape = DEFAULT.driveEscape;
+
+        int i = 0;
+        try {
+            while (i < tokens.size()) {
+                String entry = tokens.get(i++);
+                if (entry.equals("piece")) {
+                    int type = Piece.fromName(tokens.get(i++)).getType();
+                    pieceValues[type] = Integer.parseInt(tokens.get(i++));
+                } else if (entry.equals("hand")) {
+                    String name = tokens.get(i++);
+                    int type = name.length() == 1 ? Piece.typeOf(name.charAt(0)) : -1;
+                    if (type <= Piece.DRIVE) {
+                        throw new IllegalArgumentException("Invalid hand piece: " + name);
+                    }
+                    for (int n = 0; n < HAND_SLOTS; n++) {
+                        handValues[type][n] = Integer.parseInt(tokens.get(i++));
+                    }
+                } else if (entry.equals("square")) {
+                    int type = Piece.fromName(tokens.get(i++)).getType();
+                    for (int row = Bitboards.BOARD_SIZE - 1; row >= 0; row--) {
+                        for (int col = 0; col < Bitboards.BOARD_SIZE; col++) {
+                            squareValues[type][Bitboards.square(col, row)] = Integer.parseInt(tokens.get(i++));
+                        }
+                    }
+                } else if (entry.equals("drive_zone_attack")) {
+                    driveZoneAttack = Integer.parseInt(tokens.get(i++));
+                } else if (entry.equals("drive_escape")) {
+                    driveEscape = Integer.parseInt(tokens.get(i++));
+                } else {
+                    throw new IllegalArgumentException("Unknown entry: " + entry);
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Invalid weights file " + path + ": the last entry is cut short");
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid weights file " + path + ": " + e.getMessage());
+        }
+        return new Evaluation(pieceValues, handValues, squareValues, driveZoneAttack, driveEscape);
+    }
+
+    /**
+     * Function that writes the weights in the format load reads.
+     *
+     * @param out where to write
+     */
+    public void save(PrintStream out) {
+        out.println("# Box Shogi evaluation weights, in hundredths of a preview, for lower player.");
+        for (int type = 0; type < Piece.TYPE_COUNT; type++) {
+            out.println("piece " + Piece.of(type, true).getName() + " " + pieceValues[type]);
+        }
+        for (int type = Piece.NOTES; type <= Piece.PREVIEW; type++) {
+            StringBuilder line = new StringBuilder("hand ").append(Piece.typeName(type));
+            for (int n = 0; n < HAND_SLOTS; n++) {
+                line.append(' ').append(handValues[type][n]);
+            }
+            out.println(line);
+        }
+        for (int type = 0; type < Piece.TYPE_COUNT; type++) {
+            out.println("square " + Piece.of(type, true).getName());
+            for (int row = Bitboards.BOARD_SIZE - 1; row >= 0; row--) {
+                StringBuilder line = new StringBuilder();
+                for (int col = 0; col < Bitboards.BOARD_SIZE; col++) {
+                    line.append(String.format(Locale.ROOT, "%4d", squareValues[type][Bitboards.square(col, row)]));
+                }
+                out.println(line);
+            }
+        }
+        out.println("drive_zone_attack " + driveZoneAttack);
+        out.println("drive_escape " + driveEscape);
+    }
+}
@@ -0,0 +1,311 @@
+package boxshogi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class that reads a game file through a memory-mapped window and hands its
+ * moves out one at a time.
+ *
+ * The pieces and captures at the top of the file are parsed when the file is
+ * opened. The moves are only read when asked for, a window of the file at a
+ * time, so a log of any length is replayed in constant memory. Words are
+ * looked up in a cache of the ones a game uses (commands, squares, piece
+ * names), so reading a well formed move does not allocate.
+ *
+ * The format is forgiving: lines may end with "\r\n" and carry extra spaces,
+ * the blank lines around the captures may be missing or repeated, and blank
+ * lines between moves are skipped.
+ */
+public class GameFile implements MoveSource, Closeable {
+
+    private static final long WINDOW_SIZE = 1L << 26;
+    private static final int MAX_CACHED_WORDS = 8;
+    private static final String[] KNOWN_WORDS = { "move", "drop", "promote", "exit" };
+
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long windowEnd;
+    private long position;
+
+    // Bounds of the current line, trimmed, as absolute offsets.
+    private long lineStart;
+    private long lineEnd;
+
+    private final Utils.TestCase header;
+    private final String[] shortWords = new String[128 * 128];
+    private final String[][] wordArrays = new String[MAX_CACHED_WORDS + 1][];
+
+    /**
+     * Constructor, reads the pieces and the captures.
+     *
+     * @param path the path of the game file
+     * @throws IOException If the file cannot be read or its header is malformed, IOException would be triggerd.
+     */
+    public GameFile(String path) throws IOException {
+        this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        this.size = channel.size();
+        try {
+            this.header = readHeader();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        for (int length = 0; length <= MAX_CACHED_WORDS; length++) {
+            wordArrays[length] = new String[length];
+        }
+    }
+
+    /**
+     * Function that returns the pieces and captures of the file.
+     *
+     * @return a TestCase without moves
+     */
+    public Utils.TestCase getHeader() {
+        return header;
+    }
+
+    @Override
+    public String[] nextMove() throws IOException {
+        while (nextLine()) {
+            if (lineStart < lineEnd) {
+                return splitLine();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    /** <-------------------- Header --------------------> **/
+
+    /**
+     * Function that reads the initial pieces, then both capture lines.
+     *
+     * @return the header as a TestCase with no moves
+     * @throws IOException If the header is malformed, IOException would be triggerd.
+     */
+    private Utils.TestCase readHeader() throws IOException {
+        List<Utils.InitialPosition> initialPieces = new ArrayList<>();
+        // Pieces run until a blank line, or straight into the captures.
+        boolean atCaptures = false;
+        while (nextLine() && lineStart < lineEnd) {
+            if (byteAt(lineStart) == '[') {
+                atCaptures = true;
+                break;
+            }
+            String[] parts = lineString().split("\\s+");
+            if (parts.length != 2) {
+                throw new IOException("Invalid piece line: " + lineString());
+            }
+            initialPieces.add(new Utils.InitialPosition(parts[0], parts[1]));
+        }
+        List<String> upperCaptures = readCaptures("UPPER", atCaptures);
+        List<String> lowerCaptures = readCaptures("lower", false);
+        return new Utils.TestCase(initialPieces, upperCaptures, lowerCaptures, Collections.emptyList());
+    }
+
+    /**
+     * Function that reads a capture line like "[p N]", skipping blank lines before it.
+     *
+     * @param player    the player name, for the error message
+     * @param onTheLine whether the current line is already the capture line
+     * @return the captured piece names in order
+     * @throws IOException If the line is missing or malformed, IOException would be triggerd.
+     */
+    private List<String> readCaptures(String player, boolean onTheLine) throws IOException {
+        if (!onTheLine) {
+            do {
+                if (!nextLine()) {
+                    throw new IOException("Missing captures of " + player + " player");
+                }
+            } while (lineStart >= lineEnd);
+        }
+        String line = lineString();
+        if (!line.startsWith("[") || !line.endsWith("]")) {
+            throw new IOException("Invalid captures of " + player + " player: " + line);
+        }
+        List<String> captures = new ArrayList<>();
+        for (String name : line.substring(1, line.length() - 1).split("\\s+")) {
+            if (!name.isEmpty()) {
+                captures.add(name);
+            }
+        }
+        return captures;
+    }
+
+    /** <-------------------- Lines and words --------------------> **/
+
+    /**
+     * Function that moves to the next line and trims it.
+     *
+     * @return false at the end of the file
+     * @throws IOException If a line does not fit in a window, IOException would be triggerd.
+     */
+    private boolean nextLine() throws IOException {
+        if (position >= size) {
+            lineStart = lineEnd = size;
+            return false;
+        }
+        long end = findLineEnd(position);
+        lineStart = position;
+        lineEnd = end;
+        position = end + 1;
+        while (lineStart < lineEnd && (byteAt(lineStart) & 0xff) <= ' ') {
+            lineStart++;
+        }
+        while (lineEnd > lineStart && (byteAt(lineEnd - 1) & 0xff) <= ' ') {
+            lineEnd--;
+        }
+        return true;
+    }
+
+    /**
+     * Function that finds the newline ending the line starting at an offset,
+     * mapping the next window of the file if the line runs past this one.
+     *
+     * @param start the offset of the line
+     * @return the offset of the newline, or the size of the file
+     * @throws IOException If the line is longer than a window, IOException would be triggerd.
+     */
+    private long findLineEnd(long start) throws IOException {
+        if (window == null || start < windowStart || start >= windowEnd) {
+            map(start);
+        }
+        for (int pass = 0; pass < 2; pass++) {
+            for (long offset = start; offset < windowEnd; offset++) {
+                if (byteAt(offset) == '\n') {
+                    return offset;
+                }
+            }
+            if (windowEnd == size) {
+                return size;
+            }
+            // The line goes on past the window, map again from its start.
+            map(start);
+        }
+        throw new IOException("Line longer than " + WINDOW_SIZE + " bytes at offset " + start);
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        windowEnd = Math.min(size, start + WINDOW_SIZE);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+    }
+
+    private byte byteAt(long offset) {
+        return window.get((int) (offset - windowStart));
+    }
+
+    private String lineString() {
+        byte[] bytes = new byte[(int) (lineEnd - lineStart)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = byteAt(lineStart + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Function that splits the current line on single spaces, as String.split(" ")
+     * does on a trimmed line: two spaces in a row give an empty word.
+     *
+     * @return the words, in an array reused for lines with the same word count
+     */
+    private String[] splitLine() {
+        int count = 1;
+        for (long offset = lineStart; offset < lineEnd; offset++) {
+            if (byteAt(offset) == ' ') {
+                count++;
+            }
+        }
+        String[] words = count <= MAX_CACHED_WORDS ? wordArrays[count] : new String[count];
+        int index = 0;
+        long wordStart = lineStart;
+        for (long offset = lineStart; offset <= lineEnd; offset++) {
+            if (offset == lineEnd || byteAt(offset) == ' ') {
+                words[index++] = word(wordStart, offset);
+                wordStart = offset + 1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Function that returns a word of the line, from the cache when it is a
+     * known word or at most two ASCII characters long.
+     *
+     * @param start offset of the first byte
+     * @param end   offset after the last byte
+     * @return the word
+     */
+    private String word(long start, long end) {
+        int length = (int) (end - start);
+        if (length == 0) {
+            return "";
+        }
+        if (length <= 2) {
+            int first = byteAt(start);
+            int second = length == 2 ? byteAt(start + 1) : 0;
+            if (first > 0 && second >= 0) {
+                // One character words are below 128, two character words above.
+                int index = length == 2 ? first * 128 + second : first;
+                if (shortWords[index] == null) {
+                    shortWords[index] = length == 2 ? "" + (char) first + (char) second : String.valueOf((char) first);
+                }
+                return shortWords[index];
+            }
+        }
+        for (String known : KNOWN_WORDS) {
+            if (matches(known, start, length)) {
+                return known;
+            }
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = byteAt(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean matches(String known, long start, int length) {
+        if (known.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (byteAt(start + i) != known.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Function that reads every remaining move into a list, for callers that
+     * want the whole game at once.
+     *
+     * @return the moves, each a trimmed line
+     * @throws IOException If a move cannot be read, IOException would be triggerd.
+     */
+    List<String> readAllMoves() throws IOException {
+        List<String> moves = new ArrayList<>();
+        for (String[] words = nextMove(); words != null; words = nextMove()) {
+            moves.add(String.join(" ", Arrays.asList(words)));
+        }
+        return moves;
+    }
+}
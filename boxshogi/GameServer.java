@@ -0,0 +1,142 @@
+package boxshogi;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Class that hosts many independent games over TCP.
+ *
+ * Every connection gets its own interactive game, with its own board and
+ * players, so games share nothing but the immutable tables of Bitboards,
+ * Zobrist and Piece. The protocol is the one of interactive mode: the server
+ * prints the game status and the prompt, the client answers with one line
+ * holding a move, drop or exit command. A connection closing counts as exit.
+ *
+ * Each connection is served by its own thread. On a JDK with virtual threads
+ * these are virtual threads, so thousands of idle games cost little; on older
+ * JDKs an unbounded pool of platform threads is used instead. At most
+ * maxGames games run at once; further clients are told the server is full
+ * and disconnected. Games can be given a RepetitionRule so that clients
+ * shuffling pieces back and forth do not keep a game alive until MAX_TURN.
+ */
+public class GameServer {
+
+    public static final int DEFAULT_MAX_GAMES = 1024;
+
+    private final int port;
+    private final int maxGames;
+    private final Semaphore gameSlots;
+    private final RepetitionRule repetitionRule;
+
+    /**
+     * Constructor.
+     *
+     * @param port     the TCP port to listen on, bound to the loopback address
+     * @param maxGames how many games may run at once
+     */
+    public GameServer(int port, int maxGames) {
+        this(port, maxGames, RepetitionRule.STRICT);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param port           the TCP port to listen on, bound to the loopback address
+     * @param maxGames       how many games may run at once
+     * @param repetitionRule what ends a game that repeats a position
+     */
+    public GameServer(int port, int maxGames, RepetitionRule repetitionRule) {
+        this.port = port;
+        this.repetitionRule = repetitionRule;
+        this.maxGames = Math.max(maxGames, 1);
+        this.gameSlots = new Semaphore(this.maxGames);
+    }
+
+    /**
+     * Function that accepts connections until the process is stopped.
+     *
+     * @param log where to print the server messages
+     * @throws IOException If the port cannot be listened on, IOException would be triggerd.
+     */
+    public void run(PrintStream log) throws IOException {
+        ExecutorService executor = newVirtualThreadExecutor();
+        boolean virtual = executor != null;
+        if (!virtual) {
+            executor = Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "boxshogi-game");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        try (ServerSocket server = new ServerSocket(port, maxGames, InetAddress.getLoopbackAddress())) {
+            log.println("Listening on " + server.getLocalSocketAddress() + ", at most " + maxGames + " games"
+                    + (virtual ? " on virtual threads" : " on platform threads") + ", repetition rule " + repetitionRule);
+            while (true) {
+                Socket client = server.accept();
+                if (!gameSlots.tryAcquire()) {
+                    refuse(client);
+                    continue;
+                }
+                try {
+                    executor.execute(() -> serve(client));
+                } catch (RuntimeException e) {
+                    gameSlots.release();
+                    client.close();
+                    throw e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Function that plays one game with a client, then closes the connection.
+     *
+     * @param client the connected socket
+     */
+    private void serve(Socket client) {
+        try (Socket socket = client) {
+            socket.setTcpNoDelay(true);
+            PrintStream out = new PrintStream(new BufferedOutputStream(socket.getOutputStream()), true);
+            BoxShogi game = new BoxShogi(socket.getInputStream(), out, 1);
+            game.setRepetitionRule(repetitionRule);
+            game.gameStart();
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            // A broken connection or a failing game only ends that game.
+        } finally {
+            gameSlots.release();
+        }
+    }
+
+    private void refuse(Socket client) {
+        try (Socket socket = client) {
+            PrintStream out = new PrintStream(socket.getOutputStream(), true);
+            out.println("Server is full, at most " + maxGames + " games at once.");
+        } catch (IOException e) {
+            // The client went away first.
+        }
+    }
+
+    /**
+     * Function that creates an executor starting one virtual thread per task,
+     * looked up by reflection so the code still builds and runs on JDKs without them.
+     *
+     * @return the executor, or null if the JDK has no virtual threads
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package boxshogi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class to represent the captured pieces a player holds in hand.
+ *
+ * The hand is a counter per unpromoted type, so adding, removing and testing
+ * a type are constant time, plus a mask of the types held at least once. The
+ * order pieces were captured in is only needed to print the captures the way
+ * they always were: new captures go at the end and a drop takes out the first
+ * piece of its type. That order is kept in a small array next to the counters.
+ */
+public final class Hand {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final boolean isLower;
+    private final int[] counts = new int[Piece.PREVIEW + 1];
+    private int typeMask;
+    private int[] order = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /** Constructor */
+    public Hand(boolean isLower) {
+        this.isLower = isLower;
+    }
+
+    /**
+     * Function that counts the pieces of one type in hand.
+     *
+     * @param type an unpromoted type index
+     * @return how many pieces of the type are held
+     */
+    public int count(int type) {
+        return counts[type];
+    }
+
+    public boolean contains(int type) {
+        return counts[type] > 0;
+    }
+
+    /**
+     * Function that returns which types are held.
+     *
+     * @return a mask with bit t set when at least one piece of type t is held
+     */
+    public int getTypeMask() {
+        return typeMask;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Function that adds a captured piece after the others.
+     *
+     * @param type an unpromoted type index
+     */
+    public void add(int type) {
+        insert(size, type);
+    }
+
+    /**
+     * Function that adds a piece at a given place of the display order, as
+     * taking back a drop does.
+     *
+     * @param index the place in display order, at most size()
+     * @param type  an unpromoted type index
+     */
+    public void insert(int index, int type) {
+        if (size == order.length) {
+            order = Arrays.copyOf(order, size * 2);
+        }
+        System.arraycopy(order, index, order, index + 1, size - index);
+        order[index] = type;
+        size++;
+        counts[type]++;
+        typeMask |= 1 << type;
+    }
+
+    /**
+     * Function that takes out the first piece of a type, as a drop does.
+     *
+     * @param type an unpromoted type index held at least once
+     * @return the place the piece had in display order
+     */
+    public int remove(int type) {
+        int index = 0;
+        while (order[index] != type) {
+            index++;
+        }
+        removeAt(index);
+        return index;
+    }
+
+    /**
+     * Function that takes out the last piece added, as taking back a capture does.
+     */
+    public void removeLast() {
+        removeAt(size - 1);
+    }
+
+    private void removeAt(int index) {
+        int type = order[index];
+        size--;
+        System.arraycopy(order, index + 1, order, index, size - index);
+        if (--counts[type] == 0) {
+            typeMask &= ~(1 << type);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        typeMask = 0;
+        size = 0;
+    }
+
+    /**
+     * Function that replaces the content of this hand with a copy of another.
+     *
+     * @param other the hand to copy
+     */
+    public void copyFrom(Hand other) {
+        System.arraycopy(other.counts, 0, counts, 0, counts.length);
+        typeMask = other.typeMask;
+        order = Arrays.copyOf(other.order, other.order.length);
+        size = other.size;
+    }
+
+    /**
+     * Function that returns the names of the pieces in display order.
+     *
+     * @return the names, lowercase for lower player and uppercase otherwise
+     */
+    public List<String> getNames() {
+        List<String> names = new ArrayList<>(size);
+        for (int index = 0; index < size; index++) {
+            names.add(Piece.handName(order[index], isLower));
+        }
+        return names;
+    }
+
+    /**
+     * Function that writes the names of the pieces in display order, separated by spaces.
+     *
+     * @param out the builder to append to
+     */
+    public void appendTo(StringBuilder out) {
+        for (int index = 0; index < size; index++) {
+            if (index > 0) {
+                out.append(' ');
+            }
+            out.append(Piece.handName(order[index], isLower));
+        }
+    }
+}
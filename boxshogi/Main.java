@@ -1,15 +1,22 @@
 package boxshogi;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 
 public class Main {
     public static void main(String[] args) throws IOException {
-        if (args.length == 1 && args[0].equals("-i")) {
+        if (args.length >= 1 && args[0].equals("-i")) {
             BoxShogi game = new BoxShogi(System.in, System.out, 1);
+            if (!setUpComputerPlayers(game, args)) {
+                System.out.println("Please specify computer players by -i --ai [lower|upper|both]"
+                        + " [--movetime ms] [--nodes count] [--depth plies] [--threads count] [--hash megabytes] [--tablebase file]"
+                        + " [--weights file] [--repetition strict|fourfold|perpetual] [--engine alphabeta|mcts]");
+                return;
+            }
             game.gameStart();
         } else if (args.length == 2 && args[0].equals("-f")) {
-            try {
-                Utils.TestCase input = Utils.parseTestCase(args[1]);
+            try (GameFile input = new GameFile(args[1])) {
                 BoxShogi game = new BoxShogi(input, System.out);
                 game.runGameInFileMode();
                 // String sampleOutput = "UPPER player action: drop s d1\n"
@@ -27,8 +34,218 @@ public class Main {
             } catch (Exception e) {
                 System.out.println(e.toString());
             }
+        } else if ((args.length == 2 || args.length == 3) && args[0].equals("-b")) {
+            try {
+                int threads = args.length == 3 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+                boolean passed = new BatchRunner(new File(args[1]), threads).run(System.out);
+                if (!passed) {
+                    System.exit(1);
+                }
+            } catch (Exception e) {
+                System.out.println(e.toString());
+            }
+        } else if ((args.length == 2 || args.length == 3) && args[0].equals("-perft")) {
+            try {
+                int depth = Integer.parseInt(args[1]);
+                Board board = args.length == 3 ? Board.fromTestCase(Utils.parseTestCase(args[2])) : new Board(false);
+                new Perft(board, depth).divide(System.out);
+            } catch (Exception e) {
+                System.out.println(e.toString());
+            }
+        } else if (args.length >= 2 && args[0].equals("-selfplay")) {
+            try {
+                SelfPlay match = setUpSelfPlay(args);
+                if (match == null) {
+                    System.out.println("Please specify a match by -selfplay [games] [--threads count]"
+                            + " [--opening plies] [--a engine] [--b engine] [--repetition strict|fourfold|perpetual],"
+                            + " an engine being like depth=3,nodes=0,movetime=0,hash=16,weights=file"
+                            + " or engine=mcts,nodes=20000");
+                    return;
+                }
+                match.run(System.out);
+            } catch (Exception e) {
+                System.out.println(e.toString());
+            }
+        } else if (args.length >= 2 && args.length <= 4 && args[0].equals("-server")) {
+            try {
+                int port = Integer.parseInt(args[1]);
+                int maxGames = args.length >= 3 ? Integer.parseInt(args[2]) : GameServer.DEFAULT_MAX_GAMES;
+                RepetitionRule rule = args.length == 4 ? RepetitionRule.parse(args[3]) : RepetitionRule.STRICT;
+                new GameServer(port, maxGames, rule).run(System.out);
+            } catch (Exception e) {
+                System.out.println(e.toString());
+            }
+        } else if ((args.length == 3 || args.length == 4) && args[0].equals("-tbgen")) {
+            try {
+                int threads = args.length == 4 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+                new TablebaseGenerator(args[1], threads).generate(args[2], System.out);
+            } catch (Exception e) {
+                System.out.println(e.toString());
+            }
+        } else if (args.length == 3 && args[0].equals("-tbprobe")) {
+            try {
+                Tablebase tablebase = Tablebase.open(args[1]);
+                tablebase.printAnswer(Board.fromTestCase(Utils.parseTestCase(args[2])), System.out);
+            } catch (Exception e) {
+                System.out.println(e.toString());
+            }
+        } else if (args.length >= 2 && args.length <= 4 && args[0].equals("-mate")) {
+            try {
+                long maxNodes = args.length >= 3 ? Long.parseLong(args[2]) : MateSolver.DEFAULT_MAX_NODES;
+                long cacheMegabytes = args.length == 4 ? Long.parseLong(args[3]) : MateSolver.DEFAULT_CACHE_MEGABYTES;
+                new MateSolver(cacheMegabytes, maxNodes).printAnswer(Board.fromTestCase(Utils.parseTestCase(args[1])),
+                        System.out);
+            } catch (Exception e) {
+                System.out.println(e.toString());
+            }
+        } else if (args.length == 2 && args[0].equals("-weights")) {
+            try (PrintStream out = new PrintStream(args[1], "UTF-8")) {
+                Evaluation.DEFAULT.save(out);
+            } catch (Exception e) {
+                System.out.println(e.toString());
+            }
         } else {
             System.out.println("Please specify input by -i or -f [file name]");
+            System.out.println("Or run every test case of a directory by -b [directory] [optional thread count]");
+            System.out.println("Or count move paths by -perft [depth] [optional file name]");
+            System.out.println("Or host games over TCP by -server [port] [optional max games] [optional repetition rule]");
+            System.out.println("Or match two engines by -selfplay [games] [optional --threads, --opening, --a, --b, --repetition]");
+            System.out.println("Or build an endgame tablebase by -tbgen [pieces like gp] [file name] [optional thread count]");
+            System.out.println("Or look a test case up in a tablebase by -tbprobe [tablebase file] [file name]");
+            System.out.println("Or write the default evaluation weights to a file by -weights [file name]");
+            System.out.println("Or look for a checkmate by -mate [file name] [optional node limit] [optional cache megabytes]");
+        }
+    }
+
+    /**
+     * Function that reads the match options following -selfplay.
+     *
+     * @param args the command line arguments, starting with -selfplay and the number of games
+     * @return the match, or null if the options could not be understood
+     * @throws IllegalArgumentException if an engine setting or the repetition rule is not understood
+     */
+    private static SelfPlay setUpSelfPlay(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int openingPlies = 4;
+        SelfPlay.EngineSpec engineA = SelfPlay.EngineSpec.parse("depth=3");
+        SelfPlay.EngineSpec engineB = SelfPlay.EngineSpec.parse("depth=3");
+        RepetitionRule rule = RepetitionRule.STRICT;
+        try {
+            int games = Integer.parseInt(args[1]);
+            for (int i = 2; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    return null;
+                }
+                String value = args[i + 1];
+                if (args[i].equals("--threads")) {
+                    threads = Integer.parseInt(value);
+                } else if (args[i].equals("--opening")) {
+                    openingPlies = Integer.parseInt(value);
+                } else if (args[i].equals("--a")) {
+                    engineA = SelfPlay.EngineSpec.parse(value);
+                } else if (args[i].equals("--b")) {
+                    engineB = SelfPlay.EngineSpec.parse(value);
+                } else if (args[i].equals("--repetition")) {
+                    rule = RepetitionRule.parse(value);
+                } else {
+                    return null;
+                }
+            }
+            return games < 1 ? null : new SelfPlay(games, threads, openingPlies, engineA, engineB, rule);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Function that reads the computer player options following -i.
+     *
+     * @param game the interactive game to set the computer players of
+     * @param args the command line arguments, starting with -i
+     * @return false if the options could not be understood
+     * @throws IOException If the tablebase or the weights cannot be read, IOException would be triggerd.
+     */
+    private static boolean setUpComputerPlayers(BoxShogi game, String[] args) throws IOException {
+        String side = null;
+        long moveTime = -1;
+        long nodes = 0;
+        int depth = Searcher.MAX_PLY;
+        int threads = 1;
+        long hashMegabytes = AlphaBetaEngine.DEFAULT_HASH_MEGABYTES;
+        String tablebase = null;
+        String weights = null;
+        RepetitionRule rule = RepetitionRule.STRICT;
+        String engine = "alphabeta";
+        int gameOptions = 0;
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    return false;
+                }
+                String value = args[i + 1];
+                if (args[i].equals("--ai")) {
+                    side = value;
+                } else if (args[i].equals("--movetime")) {
+                    moveTime = Long.parseLong(value);
+                } else if (args[i].equals("--nodes")) {
+                    nodes = Long.parseLong(value);
+                } else if (args[i].equals("--depth")) {
+                    depth = Integer.parseInt(value);
+                } else if (args[i].equals("--threads")) {
+                    threads = Integer.parseInt(value);
+                } else if (args[i].equals("--hash")) {
+                    hashMegabytes = Long.parseLong(value);
+                } else if (args[i].equals("--tablebase")) {
+                    tablebase = value;
+                    gameOptions++;
+                } else if (args[i].equals("--weights")) {
+                    weights = value;
+                } else if (args[i].equals("--repetition")) {
+                    rule = RepetitionRule.parse(value);
+                    gameOptions++;
+                } else if (args[i].equals("--engine")) {
+                    engine = value;
+                } else {
+                    return false;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+
+        game.setRepetitionRule(rule);
+        Tablebase table = tablebase != null ? Tablebase.open(tablebase) : null;
+        game.setTablebase(table);
+        if (side == null) {
+            // Without computer players only the repetition rule and the tablebase may be given.
+            return args.length == 1 + 2 * gameOptions;
+        }
+        if (!side.equals("lower") && !side.equals("upper") && !side.equals("both") || threads < 1 || hashMegabytes < 1) {
+            return false;
+        }
+        ComputerPlayer computer;
+        if (engine.equals("mcts")) {
+            // Monte Carlo tree search counts playouts instead of nodes and has no depth.
+            // Without --movetime it has no time limit, so its default playout count applies.
+            computer = new MctsEngine(Math.max(moveTime, 0), nodes, threads);
+        } else if (engine.equals("alphabeta")) {
+            // Without --movetime alpha-beta searches for a second.
+            AlphaBetaEngine alphaBeta = new AlphaBetaEngine(moveTime >= 0 ? moveTime : 1000, nodes, depth, threads,
+                    hashMegabytes);
+            alphaBeta.setTablebase(table);
+            if (weights != null) {
+                alphaBeta.setEvaluation(Evaluation.load(weights));
+            }
+            computer = alphaBeta;
+        } else {
+            return false;
+        }
+        if (!side.equals("upper")) {
+            game.setComputerPlayer(true, computer);
+        }
+        if (!side.equals("lower")) {
+            game.setComputerPlayer(false, computer);
         }
+        return true;
     }
 }
@@ -0,0 +1,431 @@
+package boxshogi;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Checkmate solver using depth-first proof-number search (df-pn).
+ *
+ * The side to move is the attacker and may only play moves that give check;
+ * the defender may play any legal move. Every position has a proof number, how
+ * many positions at least must still be shown mated to prove the mate, and a
+ * disproof number, how many must be shown to escape to disprove it. The search
+ * always descends into the most proving child, and only leaves it once its
+ * numbers pass a threshold derived from its siblings, so it works through the
+ * tree depth first while keeping the numbers of best-first proof-number
+ * search.
+ *
+ * The moves come from MoveGenerator, so a preview drop giving immediate
+ * checkmate is never tried, as BoxShogi.handleDrop forbids it. A position
+ * repeating one on the current line, or deeper than MAX_DEPTH plies, counts as
+ * an escape. The move limit of the game is not taken into account.
+ *
+ * Such an escape depends on the line that reached the position, not on the
+ * position alone, so a disproof that rests on one is never cached: it is kept
+ * by the parent for as long as the line stands, and passed further up.
+ *
+ * Numbers live in a cache of fixed size, in buckets of four entries. A new
+ * position replaces the entry of its bucket that took the fewest nodes to
+ * compute, so results that were costly to get survive the longest. A proved
+ * position also keeps the length of the mate found below it, so the proof line
+ * can be read back from the cache: the shortest mate the search found, which
+ * is not always the shortest there is.
+ */
+public class MateSolver {
+
+    public static final long DEFAULT_CACHE_MEGABYTES = 64;
+    public static final long DEFAULT_MAX_NODES = 10000000;
+
+    /** Plies below the root after which a line counts as an escape. */
+    static final int MAX_DEPTH = 128;
+
+    private static final int INFINITY = 100000000;
+    private static final int ENTRY_BYTES = 22;
+    private static final int BUCKET_ENTRIES = 4;
+
+    private final long[] keys;
+    private final int[] proofs;
+    private final int[] disproofs;
+    private final int[] works;
+    private final short[] distances;
+    private final int buckets;
+    private final long maxNodes;
+
+    private final int[][] moves = new int[MAX_DEPTH + 1][];
+    private final long[][] childKeys = new long[MAX_DEPTH + 1][];
+    /** Children disproved on the current line only, by a repetition or the depth limit below them. */
+    private final boolean[][] lineEscapes = new boolean[MAX_DEPTH + 1][];
+    private final long[] path = new long[MAX_DEPTH + 1];
+    private Board board;
+    private long nodes;
+    private long limit;
+
+    /** Results of the last cache lookup, to avoid allocating a pair per lookup. */
+    private int foundProof;
+    private int foundDisproof;
+    private int foundDistance;
+    private boolean foundOnLine;
+
+    /**
+     * Constructor.
+     *
+     * @param cacheMegabytes the size of the cache, rounded down to whole buckets
+     * @param maxNodes       node budget, 0 for no limit
+     */
+    public MateSolver(long cacheMegabytes, long maxNodes) {
+        long wanted = Math.max(cacheMegabytes, 1) * 1024 * 1024 / (ENTRY_BYTES * BUCKET_ENTRIES);
+        int buckets = (int) Math.min(wanted, 1 << 26);
+        int entries = buckets * BUCKET_ENTRIES;
+        this.keys = new long[entries];
+        this.proofs = new int[entries];
+        this.disproofs = new int[entries];
+        this.works = new int[entries];
+        this.distances = new short[entries];
+        this.buckets = buckets;
+        this.maxNodes = maxNodes > 0 ? maxNodes : Long.MAX_VALUE;
+    }
+
+    /**
+     * Function that searches for a checkmate by the side to move.
+     *
+     * @param position the position, left unchanged
+     * @return the length in plies of the mate found, -1 if there is none, or -2
+     *         if the node budget ran out first
+     */
+    public int solve(Board position) {
+        board = position.copy();
+        nodes = 0;
+        limit = maxNodes;
+        Arrays.fill(works, 0);
+        path[0] = board.getKey();
+        if (mid(0, INFINITY, INFINITY)) {
+            return -1;
+        }
+        lookup(board.getKey());
+        if (foundProof == 0) {
+            return foundDistance;
+        }
+        return foundDisproof == 0 ? -1 : -2;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Function that expands a position and searches below it until its proof or
+     * disproof number reaches its threshold.
+     *
+     * Numbers are handled from the side to move of each position: phi is the
+     * proof number where the attacker moves and the disproof number where the
+     * defender moves, delta the other one. A position's phi is the smallest delta
+     * of its children and its delta the sum of their phi.
+     *
+     * @param ply      plies from the root, even where the attacker moves
+     * @param phiLimit threshold of phi
+     * @param deltaLimit threshold of delta
+     * @return whether the position was disproved by an escape that holds on
+     *         the current line only, and so was not cached
+     */
+    private boolean mid(int ply, int phiLimit, int deltaLimit) {
+        nodes++;
+        long key = board.getKey();
+        long start = nodes;
+        boolean attacker = ply % 2 == 0;
+        int count = expand(ply, attacker);
+        if (count == 0) {
+            // No check to give is a disproof, no move to escape check a proof.
+            store(key, attacker ? INFINITY : 0, attacker ? 0 : INFINITY, 0, 1);
+            return false;
+        }
+        int[] plyMoves = moves[ply];
+        long[] plyKeys = childKeys[ply];
+        boolean childAttacker = !attacker;
+        while (true) {
+            int phi = INFINITY;
+            int delta = 0;
+            int best = 0;
+            int bestPhi = 0;
+            int secondDelta = INFINITY;
+            int shortest = Integer.MAX_VALUE;
+            int longest = 0;
+            boolean onLine = false;
+            for (int i = 0; i < count; i++) {
+                childNumbers(ply, i);
+                onLine |= foundOnLine;
+                int childPhi = childAttacker ? foundProof : foundDisproof;
+                int childDelta = childAttacker ? foundDisproof : foundProof;
+                delta = Math.min(delta + childPhi, INFINITY);
+                if (childDelta < phi) {
+                    secondDelta = phi;
+                    phi = childDelta;
+                    best = i;
+                    bestPhi = childPhi;
+                } else if (childDelta < secondDelta) {
+                    secondDelta = childDelta;
+                }
+                if (foundProof == 0) {
+                    shortest = Math.min(shortest, foundDistance);
+                    longest = Math.max(longest, foundDistance);
+                }
+            }
+            int proof = attacker ? phi : delta;
+            int distance = proof != 0 ? 0 : 1 + (attacker ? shortest : longest);
+            if (phi >= phiLimit || delta >= deltaLimit || nodes >= limit) {
+                if (onLine && proof >= INFINITY) {
+                    return true;
+                }
+                int work = (int) Math.min(nodes - start + 1, Integer.MAX_VALUE);
+                store(key, proof, attacker ? delta : phi, distance, work);
+                return false;
+            }
+            int childPhiLimit = deltaLimit >= INFINITY ? INFINITY : deltaLimit - delta + bestPhi;
+            int childDeltaLimit = Math.min(phiLimit, secondDelta + 1);
+            board.makeMove(plyMoves[best]);
+            path[ply + 1] = plyKeys[best];
+            if (mid(ply + 1, childPhiLimit, childDeltaLimit)) {
+                lineEscapes[ply][best] = true;
+            }
+            board.unmakeMove();
+        }
+    }
+
+    /**
+     * Function that lists the moves of a position with the keys they lead to:
+     * the checks where the attacker moves, every legal move where the defender does.
+     *
+     * @param ply      plies from the root
+     * @param attacker whether the attacker moves
+     * @return the number of moves
+     */
+    private int expand(int ply, boolean attacker) {
+        if (moves[ply] == null) {
+            moves[ply] = new int[MoveGenerator.MAX_MOVES];
+            childKeys[ply] = new long[MoveGenerator.MAX_MOVES];
+            lineEscapes[ply] = new boolean[MoveGenerator.MAX_MOVES];
+        }
+        int[] plyMoves = moves[ply];
+        long[] plyKeys = childKeys[ply];
+        int legal = MoveGenerator.generateLegalMoves(board, plyMoves);
+        int count = 0;
+        for (int i = 0; i < legal; i++) {
+            int move = plyMoves[i];
+            board.makeMove(move);
+            if (!attacker || board.isInCheck(board.getLowerTurn())) {
+                plyMoves[count] = move;
+                plyKeys[count] = board.getKey();
+                count++;
+            }
+            board.unmakeMove();
+        }
+        Arrays.fill(lineEscapes[ply], 0, count, false);
+        return count;
+    }
+
+    /**
+     * Function that gets the numbers of a child into the found fields, a
+     * repetition of the current line or a child too deep counting as an escape.
+     * foundOnLine tells whether the numbers hold on the current line only.
+     *
+     * @param ply   plies of the parent from the root
+     * @param index the index of the child among the moves of the parent
+     */
+    private void childNumbers(int ply, int index) {
+        long key = childKeys[ply][index];
+        if (ply + 1 >= MAX_DEPTH || lineEscapes[ply][index] || isRepetition(ply + 1, key)) {
+            foundProof = INFINITY;
+            foundDisproof = 0;
+            foundDistance = 0;
+            foundOnLine = true;
+            return;
+        }
+        lookup(key);
+        foundOnLine = false;
+    }
+
+    private boolean isRepetition(int ply, long key) {
+        // Keys include the side to move, so only every other position can match.
+        for (int i = ply - 2; i >= 0; i -= 2) {
+            if (path[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Function that looks a position up in the cache and leaves its numbers in
+     * the found fields, 1 and 1 for a position never searched.
+     *
+     * @param key the Zobrist key of the position
+     */
+    private void lookup(long key) {
+        int first = bucketOf(key) * BUCKET_ENTRIES;
+        for (int i = first; i < first + BUCKET_ENTRIES; i++) {
+            if (keys[i] == key && works[i] != 0) {
+                foundProof = proofs[i];
+                foundDisproof = disproofs[i];
+                foundDistance = distances[i];
+                return;
+            }
+        }
+        foundProof = 1;
+        foundDisproof = 1;
+        foundDistance = 0;
+    }
+
+    /**
+     * Function that finds the bucket of a position. The count of buckets is not
+     * a power of two, so the cache takes the whole size asked for: the high
+     * half of the key is scaled to the count instead of masked.
+     *
+     * @param key the Zobrist key of the position
+     * @return the bucket index
+     */
+    private int bucketOf(long key) {
+        return (int) (((key >>> 32) * buckets) >>> 32);
+    }
+
+    /**
+     * Function that stores the numbers of a position, over its own entry or the
+     * entry of its bucket that took the fewest nodes to compute.
+     *
+     * @param key       the Zobrist key of the position
+     * @param proof     the proof number
+     * @param disproof  the disproof number
+     * @param distance  the length in plies of the mate found, when proved
+     * @param work      the nodes searched to get the numbers
+     */
+    private void store(long key, int proof, int disproof, int distance, int work) {
+        int first = bucketOf(key) * BUCKET_ENTRIES;
+        int target = first;
+        for (int i = first; i < first + BUCKET_ENTRIES; i++) {
+            if (keys[i] == key || works[i] == 0) {
+                target = i;
+                break;
+            }
+            if (works[i] < works[target]) {
+                target = i;
+            }
+        }
+        if (keys[target] == key) {
+            work = Math.max(work, works[target]);
+        }
+        keys[target] = key;
+        proofs[target] = proof;
+        disproofs[target] = disproof;
+        distances[target] = (short) Math.min(distance, Short.MAX_VALUE);
+        works[target] = work;
+    }
+
+    /**
+     * Function that reads the proof line back from the cache: the attacker plays
+     * its shortest proved mate, the defender its longest. A position whose
+     * proof has been pushed out of the cache is solved again.
+     *
+     * @param line where to write the moves, MAX_DEPTH long
+     * @return the number of moves, or -1 if the line could not be followed to the mate
+     */
+    private int proofLine(int[] line) {
+        int length = -1;
+        int made = 0;
+        for (int ply = 0; ply < MAX_DEPTH; ply++) {
+            boolean attacker = ply % 2 == 0;
+            path[ply] = board.getKey();
+            if (!attacker && expand(ply, false) == 0) {
+                length = made;
+                break;
+            }
+            int best = provedChild(ply, attacker);
+            if (best < 0) {
+                limit = nodes > Long.MAX_VALUE - maxNodes ? Long.MAX_VALUE : nodes + maxNodes;
+                mid(ply, INFINITY, INFINITY);
+                best = provedChild(ply, attacker);
+            }
+            if (best < 0) {
+                break;
+            }
+            line[made++] = moves[ply][best];
+            board.makeMove(moves[ply][best]);
+        }
+        for (int i = made; i > 0; i--) {
+            board.unmakeMove();
+        }
+        return length;
+    }
+
+    /**
+     * Function that picks the proved move of a position: the one with the
+     * shortest mate for the attacker, the longest for the defender.
+     *
+     * @param ply      plies from the root
+     * @param attacker whether the attacker moves
+     * @return the index of the move, or -1 if no move is proved or, for the defender, if one is not
+     */
+    private int provedChild(int ply, boolean attacker) {
+        int count = expand(ply, attacker);
+        int best = -1;
+        int bestDistance = 0;
+        for (int i = 0; i < count; i++) {
+            lookup(childKeys[ply][i]);
+            if (foundProof != 0) {
+                if (!attacker) {
+                    return -1;
+                }
+            } else if (best < 0 || (attacker ? foundDistance < bestDistance : foundDistance > bestDistance)) {
+                best = i;
+                bestDistance = foundDistance;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Function that solves a position and prints the result, the proof line, the
+     * nodes searched with their rate and the memory used.
+     *
+     * @param position the position, left unchanged
+     * @param out      where to print
+     */
+    public void printAnswer(Board position, PrintStream out) {
+        long begin = System.nanoTime();
+        int result = solve(position);
+        long elapsed = Math.max(System.nanoTime() - begin, 1);
+        String mover = position.getLowerTurn() ? "lower" : "UPPER";
+        if (result >= 0) {
+            int[] line = new int[MAX_DEPTH];
+            int length = proofLine(line);
+            int plies = length >= 0 ? length : result;
+            out.println(mover + " player wins.  Checkmate in " + plies + (plies == 1 ? " ply." : " plies."));
+            if (length < 0) {
+                out.println("Proof line could not be rebuilt from the cache.");
+            } else {
+                StringBuilder moveList = new StringBuilder();
+                for (int i = 0; i < length; i++) {
+                    if (i > 0) {
+                        moveList.append(", ");
+                    }
+                    Move.appendTo(moveList, line[i]);
+                }
+                out.println("Proof line: " + moveList);
+            }
+        } else if (result == -1) {
+            out.println("No checkmate by checks for " + mover + " player.");
+        } else {
+            out.println("No checkmate found in " + nodes + " nodes.");
+        }
+        out.println("nodes " + nodes + " nodes/sec " + (long) (nodes * 1e9 / elapsed) + " time " + (elapsed / 1000000));
+
+        int used = 0;
+        for (int work : works) {
+            if (work != 0) {
+                used++;
+            }
+        }
+        Runtime runtime = Runtime.getRuntime();
+        out.println(String.format(Locale.ROOT, "cache %d MB occupancy %.1f%% heap used %d MB",
+                ((long) keys.length * ENTRY_BYTES + (1 << 19)) >> 20, 100.0 * used / keys.length,
+                (runtime.totalMemory() - runtime.freeMemory()) >> 20));
+    }
+}
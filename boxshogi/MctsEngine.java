@@ -0,0 +1,358 @@
+package boxshogi;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Computer player searching with Monte Carlo tree search (UCT).
+ *
+ * Each playout walks down the tree choosing the child with the best upper
+ * confidence bound, adds the first position not yet in the tree, and plays
+ * random legal moves from there until a side has no legal move (it loses) or
+ * the move limit of the game is reached (a tie). Random moves lean a little
+ * towards captures: a quiet move gets one second draw, kept if it is a
+ * capture. The result is added to every node of the path.
+ *
+ * With more than one thread, playouts run in parallel on one shared tree
+ * without locks. A thread counts its visit to a node as soon as it passes
+ * through it, before the result is known, so the node looks like a loss to
+ * the other threads until the playout ends (virtual loss) and they spread over
+ * other moves instead of all following the same path.
+ *
+ * The search stops at the move time or the playout budget and plays the root
+ * move visited the most. It prints the number of playouts, playouts per
+ * second and the visits of every root move.
+ */
+public class MctsEngine implements ComputerPlayer {
+
+    public static final long DEFAULT_PLAYOUTS = 20000;
+
+    /** Exploration constant of the upper confidence bound. */
+    private static final double EXPLORATION = 1.4;
+
+    private final long moveTimeMillis;
+    private final long maxPlayouts;
+    private final int threads;
+    private final ExecutorService helpers;
+
+    /**
+     * Constructor.
+     *
+     * @param moveTimeMillis time budget per move, 0 for no time limit
+     * @param maxPlayouts    playout budget per move, 0 for no playout limit
+     * @param threads        number of threads running playouts
+     */
+    public MctsEngine(long moveTimeMillis, long maxPlayouts, int threads) {
+        this.moveTimeMillis = moveTimeMillis;
+        this.maxPlayouts = moveTimeMillis <= 0 && maxPlayouts <= 0 ? DEFAULT_PLAYOUTS : maxPlayouts;
+        this.threads = Math.max(threads, 1);
+        this.helpers = this.threads > 1 ? Executors.newFixedThreadPool(this.threads - 1, runnable -> {
+            Thread thread = new Thread(runnable, "playout-helper");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    @Override
+    public int selectMove(Board board, int pliesLeft, PrintStream out) {
+        long start = System.nanoTime();
+        long deadline = moveTimeMillis > 0 ? start + moveTimeMillis * 1000000L : Long.MAX_VALUE;
+        SearchControl control = new SearchControl(deadline, maxPlayouts > 0 ? maxPlayouts : Long.MAX_VALUE);
+        Node root = new Node(Move.NONE);
+        root.expand(board, new int[MoveGenerator.MAX_MOVES]);
+        if (root.moves.length == 0) {
+            return Move.NONE;
+        }
+
+        List<Future<?>> helperResults = new ArrayList<>();
+        for (int i = 1; i < threads; i++) {
+            Board copy = board.copy();
+            long seed = start + i;
+            helperResults.add(helpers.submit(() -> new Worker(copy, pliesLeft, seed).run(root, control)));
+        }
+        try {
+            new Worker(board.copy(), pliesLeft, start).run(root, control);
+        } finally {
+            control.stop();
+            waitFor(helperResults);
+        }
+        printInfo(out, root, control.getNodes(), start);
+        return mostVisited(root);
+    }
+
+    private static void waitFor(List<Future<?>> results) {
+        for (Future<?> result : results) {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Function that finds the root move visited the most.
+     *
+     * @param root the root of the tree, expanded
+     * @return the move, the first legal move if none was visited
+     */
+    private static int mostVisited(Node root) {
+        int best = root.moves[0];
+        int bestVisits = 0;
+        for (int i = 0; i < root.moves.length; i++) {
+            Node child = root.children.get(i);
+            if (child != null && child.visits > bestVisits) {
+                bestVisits = child.visits;
+                best = child.move;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Function that prints the playout count and rate, then the visits of the
+     * visited root moves, most visited first.
+     *
+     * @param out      where to print
+     * @param root     the root of the tree
+     * @param playouts playouts run over all threads
+     * @param start    System.nanoTime() when the search started
+     */
+    private static void printInfo(PrintStream out, Node root, long playouts, long start) {
+        long elapsed = Math.max(System.nanoTime() - start, 1);
+        out.println("playouts " + playouts + " playouts/sec " + (long) (playouts * 1e9 / elapsed)
+                + " time " + (elapsed / 1000000));
+
+        List<Node> visited = new ArrayList<>();
+        for (int i = 0; i < root.moves.length; i++) {
+            Node child = root.children.get(i);
+            if (child != null && child.visits > 0) {
+                visited.add(child);
+            }
+        }
+        visited.sort((a, b) -> Integer.compare(b.visits, a.visits));
+        int total = Math.max(root.visits - 1, 1);
+        StringBuilder line = new StringBuilder("visits");
+        for (Node child : visited) {
+            line.append(' ');
+            Move.appendTo(line, child.move);
+            line.append(' ').append(child.visits).append(String.format(Locale.ROOT, " (%.1f%% win %.1f%%)",
+                    100.0 * child.visits / total, 50.0 * child.halfPoints / child.visits)).append(',');
+        }
+        if (!visited.isEmpty()) {
+            line.setLength(line.length() - 1);
+        }
+        out.println(line);
+    }
+
+    /**
+     * Node of the search tree: the move leading to it, its statistics and, once
+     * it has been expanded, its legal moves and the children created so far.
+     *
+     * Statistics are seen from the side that played the move. A visit counts two
+     * half points for a win, one for a tie and none for a loss.
+     */
+    private static final class Node {
+
+        private static final AtomicIntegerFieldUpdater<Node> VISITS =
+                AtomicIntegerFieldUpdater.newUpdater(Node.class, "visits");
+        private static final AtomicIntegerFieldUpdater<Node> HALF_POINTS =
+                AtomicIntegerFieldUpdater.newUpdater(Node.class, "halfPoints");
+
+        final int move;
+        volatile int visits;
+        volatile int halfPoints;
+        volatile int[] moves;
+        AtomicReferenceArray<Node> children;
+
+        Node(int move) {
+            this.move = move;
+        }
+
+        /**
+         * Function that lists the legal moves of the node once, on first use.
+         *
+         * @param board  the position of the node
+         * @param buffer a move buffer of MoveGenerator.MAX_MOVES moves
+         * @return the legal moves, empty if the side to move has lost
+         */
+        int[] expand(Board board, int[] buffer) {
+            int[] legal = moves;
+            if (legal == null) {
+                synchronized (this) {
+                    legal = moves;
+                    if (legal == null) {
+                        int count = MoveGenerator.generateLegalMoves(board, buffer);
+                        legal = Arrays.copyOf(buffer, count);
+                        children = new AtomicReferenceArray<>(count);
+                        moves = legal;
+                    }
+                }
+            }
+            return legal;
+        }
+
+        /**
+         * Function that picks the child with the best upper confidence bound, an
+         * untried move first, and creates it if needed.
+         *
+         * @param legal  the moves of the node
+         * @param random the random numbers of the thread, to spread threads over untried moves
+         * @return the child
+         */
+        Node select(int[] legal, SplittableRandom random) {
+            double logVisits = Math.log(Math.max(visits, 1));
+            int offset = random.nextInt(legal.length);
+            int best = offset;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int k = 0; k < legal.length; k++) {
+                int i = offset + k < legal.length ? offset + k : offset + k - legal.length;
+                Node child = children.get(i);
+                int childVisits = child == null ? 0 : child.visits;
+                if (childVisits == 0) {
+                    best = i;
+                    break;
+                }
+                double value = child.halfPoints / (2.0 * childVisits)
+                        + EXPLORATION * Math.sqrt(logVisits / childVisits);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = i;
+                }
+            }
+            Node child = children.get(best);
+            if (child == null) {
+                children.compareAndSet(best, null, new Node(legal[best]));
+                child = children.get(best);
+            }
+            return child;
+        }
+    }
+
+    /**
+     * The board, buffers and random numbers of one thread.
+     */
+    private static final class Worker {
+
+        private final Board board;
+        private final int pliesLeft;
+        private final SplittableRandom random;
+        private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+        private final Node[] path = new Node[BoxShogi.MAX_TURN + 2];
+
+        Worker(Board board, int pliesLeft, long seed) {
+            this.board = board;
+            this.pliesLeft = pliesLeft;
+            this.random = new SplittableRandom(seed);
+        }
+
+        /**
+         * Function that runs playouts until the search is stopped.
+         *
+         * @param root    the shared root
+         * @param control the playout count and the stop signal
+         */
+        void run(Node root, SearchControl control) {
+            boolean rootLower = board.getLowerTurn();
+            while (!control.isStopped()) {
+                playout(root, rootLower);
+                control.addNodes(1);
+                control.checkLimits();
+            }
+        }
+
+        /**
+         * Function that runs one playout: select, expand, simulate, back up.
+         *
+         * @param root      the shared root
+         * @param rootLower whether lower player moves at the root
+         * @return the result, 1 if lower player won, -1 if UPPER won, 0 for a tie
+         */
+        private int playout(Node root, boolean rootLower) {
+            Node.VISITS.incrementAndGet(root);
+            Node node = root;
+            int depth = 0;
+            int result;
+            while (true) {
+                if (depth >= pliesLeft || depth >= path.length - 1) {
+                    result = 0;
+                    break;
+                }
+                int[] legal = node.expand(board, moves);
+                if (legal.length == 0) {
+                    result = board.getLowerTurn() ? -1 : 1;
+                    break;
+                }
+                node = node.select(legal, random);
+                // The visit counts as a loss until the result is backed up.
+                int before = Node.VISITS.getAndIncrement(node);
+                board.makeMove(node.move);
+                path[++depth] = node;
+                if (before == 0) {
+                    result = simulate(depth);
+                    break;
+                }
+            }
+            for (int i = 0; i < depth; i++) {
+                board.unmakeMove();
+            }
+
+            for (int i = 1; i <= depth; i++) {
+                boolean moverLower = (i % 2 == 1) == rootLower;
+                int points = result == 0 ? 1 : (result > 0) == moverLower ? 2 : 0;
+                if (points > 0) {
+                    Node.HALF_POINTS.addAndGet(path[i], points);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Function that plays random moves to the end of the game, then takes them back.
+         *
+         * @param ply plies already played from the root
+         * @return the result, 1 if lower player won, -1 if UPPER won, 0 for a tie
+         */
+        private int simulate(int ply) {
+            int made = 0;
+            int result = 0;
+            while (ply + made < pliesLeft) {
+                int count = MoveGenerator.generateLegalMoves(board, moves);
+                if (count == 0) {
+                    result = board.getLowerTurn() ? -1 : 1;
+                    break;
+                }
+                int move = moves[random.nextInt(count)];
+                if (!isCapture(move)) {
+                    int other = moves[random.nextInt(count)];
+                    if (isCapture(other)) {
+                        move = other;
+                    }
+                }
+                board.makeMove(move);
+                made++;
+            }
+            for (; made > 0; made--) {
+                board.unmakeMove();
+            }
+            return result;
+        }
+
+        private boolean isCapture(int move) {
+            return !Move.isDrop(move) && Move.from(move) != Move.to(move) && board.getPiece(Move.to(move)) != null;
+        }
+    }
+}
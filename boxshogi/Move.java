@@ -0,0 +1,146 @@
+package boxshogi;
+
+/**
+ * Class holding the int encoding of moves and drops.
+ *
+ * Bits 0-4 hold the destination square, bits 5-9 the origin square, bit 10
+ * the promotion flag and bits 11-13 the dropped type plus one (0 for a board
+ * move). Squares are encoded as in Bitboards. The value 0 is never a legal
+ * move and is used as "no move".
+ */
+public final class Move {
+
+    public static final int NONE = 0;
+
+    /** Every encoded move is below this, so moves can index a table or bit set. */
+    public static final int CODE_COUNT = 1 << 14;
+
+    private static final int SQUARE_MASK = 0x1f;
+    private static final int FROM_SHIFT = 5;
+    private static final int PROMOTE_FLAG = 1 << 10;
+    private static final int DROP_SHIFT = 11;
+
+    /** Names of the squares, "a1" to "e5". */
+    private static final String[] SQUARE_NAMES = new String[Bitboards.SQUARE_COUNT];
+
+    static {
+        for (int sq = 0; sq < Bitboards.SQUARE_COUNT; sq++) {
+            SQUARE_NAMES[sq] = String.valueOf((char) ('a' + Bitboards.col(sq))) + (Bitboards.row(sq) + 1);
+        }
+    }
+
+    private Move() {
+    }
+
+    /**
+     * Function that encodes a board move.
+     *
+     * @param from    the square the piece leaves
+     * @param to      the square the piece lands on
+     * @param promote whether the piece gets promoted
+     * @return the encoded move
+     */
+    public static int move(int from, int to, boolean promote) {
+        return to | (from << FROM_SHIFT) | (promote ? PROMOTE_FLAG : 0);
+    }
+
+    /**
+     * Function that encodes a drop.
+     *
+     * @param type the unpromoted Piece type index to drop
+     * @param to   the square the piece lands on
+     * @return the encoded drop
+     */
+    public static int drop(int type, int to) {
+        return to | ((type + 1) << DROP_SHIFT);
+    }
+
+    public static int to(int move) {
+        return move & SQUARE_MASK;
+    }
+
+    public static int from(int move) {
+        return (move >>> FROM_SHIFT) & SQUARE_MASK;
+    }
+
+    public static boolean isPromotion(int move) {
+        return (move & PROMOTE_FLAG) != 0;
+    }
+
+    public static boolean isDrop(int move) {
+        return (move >>> DROP_SHIFT) != 0;
+    }
+
+    public static int dropType(int move) {
+        return (move >>> DROP_SHIFT) - 1;
+    }
+
+    public static String squareName(int sq) {
+        return SQUARE_NAMES[sq];
+    }
+
+    /**
+     * Function that reads a square name the way a player types it.
+     *
+     * @param name a String like "c3"
+     * @return the square, or -1 if the name is not a square of the board
+     */
+    public static int parseSquare(String name) {
+        if (name.length() != 2) {
+            return -1;
+        }
+        int col = name.charAt(0) - 'a';
+        int row = name.charAt(1) - '1';
+        if (col < 0 || col >= Bitboards.BOARD_SIZE || row < 0 || row >= Bitboards.BOARD_SIZE) {
+            return -1;
+        }
+        return Bitboards.square(col, row);
+    }
+
+    /**
+     * Function that gives a move a key sorting like its command does alphabetically.
+     *
+     * Drops come before moves, drops sort by piece letter then square, and moves
+     * by origin then destination, squares sorting by column then row.
+     *
+     * @param move the encoded move, without promotion
+     * @return the sort key
+     */
+    public static int notationKey(int move) {
+        int to = (Bitboards.col(to(move)) << 4) | Bitboards.row(to(move));
+        if (isDrop(move)) {
+            return (Piece.typeName(dropType(move)).charAt(0) << 8) | to;
+        }
+        int from = (Bitboards.col(from(move)) << 4) | Bitboards.row(from(move));
+        return (1 << 20) | (from << 8) | to;
+    }
+
+    /**
+     * Function that builds the command a player would type for a move.
+     *
+     * @param move the encoded move
+     * @return a String like "move a1 a2", "move a4 a5 promote" or "drop p c3"
+     */
+    public static String toString(int move) {
+        StringBuilder out = new StringBuilder(24);
+        appendTo(out, move);
+        return out.toString();
+    }
+
+    /**
+     * Function that writes the command a player would type for a move.
+     *
+     * @param out  the builder to append to
+     * @param move the encoded move
+     */
+    public static void appendTo(StringBuilder out, int move) {
+        if (isDrop(move)) {
+            out.append("drop ").append(Piece.typeName(dropType(move))).append(' ').append(SQUARE_NAMES[to(move)]);
+            return;
+        }
+        out.append("move ").append(SQUARE_NAMES[from(move)]).append(' ').append(SQUARE_NAMES[to(move)]);
+        if (isPromotion(move)) {
+            out.append(" promote");
+        }
+    }
+}
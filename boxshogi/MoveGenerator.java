@@ -0,0 +1,223 @@
+package boxshogi;
+
+/**
+ * Class that enumerates every legal move and drop of the side to move on a
+ * Board.
+ *
+ * Moves are written as encoded ints (see Move) into a buffer supplied by the
+ * caller, so the same buffer can be reused from one position to the next.
+ * Legality follows the rules BoxShogi enforces: a move may not leave the own
+ * drive attacked, a preview reaching the promotion zone is always promoted,
+ * and a preview may not be dropped on the promotion zone, next to another
+ * unpromoted preview of the same column or so that it gives an immediate
+ * checkmate.
+ *
+ * The attack maps of Board answer the questions about the drive directly:
+ * whether it is in check, by how many pieces, and which squares it can step to.
+ * Every other move is made legal up front instead of being tried: in check,
+ * moves must capture the checker or land between it and the drive, and drops
+ * must land between them; a piece pinned to the drive by a sliding piece may
+ * only move along the line of the pin. Nothing else can uncover the drive.
+ */
+public final class MoveGenerator {
+
+    /** Size a move buffer has to be to hold the moves of any position. */
+    public static final int MAX_MOVES = 1024;
+
+    private MoveGenerator() {
+    }
+
+    /**
+     * Function that writes every legal move of the side to move into a buffer.
+     *
+     * @param board the position, its side to move is the one generated for
+     * @param moves the buffer to write into, at least MAX_MOVES long
+     * @return the number of moves written
+     */
+    public static int generateLegalMoves(Board board, int[] moves) {
+        boolean lowerTurn = board.getLowerTurn();
+        int side = Bitboards.side(lowerTurn);
+        int own = board.getSideBitboard(lowerTurn);
+        int occupied = board.getOccupied();
+        int zone = Bitboards.promotionZone(side);
+        int drive = board.getDriveSquare(lowerTurn);
+        int empty = ~occupied & Bitboards.FULL;
+        int count = 0;
+
+        // Checkers and pinned pieces, known before any move is generated.
+        int checkers = drive >= 0 ? board.attackersOf(drive, !lowerTurn) : 0;
+        int pinned = drive >= 0 ? pinnedPieces(board, lowerTurn, drive) : 0;
+
+        // Drive steps, to squares the opponent does not attack. Squares behind the
+        // drive on the line of a sliding checker are attacked once the drive moves.
+        if (drive >= 0) {
+            int unsafe = board.getAttackMap(!lowerTurn) | sliderAttacksThrough(board, lowerTurn, drive, checkers);
+            int targets = board.attacksFrom(drive) & ~own & ~unsafe;
+            for (; targets != 0; targets &= targets - 1) {
+                moves[count++] = Move.move(drive, Integer.numberOfTrailingZeros(targets), false);
+            }
+        }
+        // Against two checkers only the drive can move.
+        if (Integer.bitCount(checkers) > 1) {
+            return count;
+        }
+
+        // Against one checker, capture it or block its line; otherwise go anywhere.
+        int moveMask = Bitboards.FULL;
+        int dropMask = empty;
+        if (checkers != 0) {
+            int block = Bitboards.between(drive, Integer.numberOfTrailingZeros(checkers));
+            moveMask = checkers | block;
+            dropMask = block;
+        }
+
+        // Board moves of every other own piece.
+        PieceList pieces = board.getPieceList(lowerTurn);
+        for (int index = 0; index < pieces.size(); index++) {
+            int from = pieces.square(index);
+            if (from == drive) {
+                continue;
+            }
+            int type = pieces.type(index);
+            int promotedType = Piece.promotedType(type);
+            int targets = board.attacksFrom(from) & ~own & moveMask;
+            if ((pinned & Bitboards.bit(from)) != 0) {
+                targets &= Bitboards.line(drive, from);
+            }
+            for (; targets != 0; targets &= targets - 1) {
+                int to = Integer.numberOfTrailingZeros(targets);
+                boolean inZone = ((Bitboards.bit(from) | Bitboards.bit(to)) & zone) != 0;
+                boolean forced = type == Piece.PREVIEW && (Bitboards.bit(to) & zone) != 0;
+                if (!forced) {
+                    moves[count++] = Move.move(from, to, false);
+                }
+                if (promotedType >= 0 && inZone) {
+                    moves[count++] = Move.move(from, to, true);
+                }
+            }
+        }
+
+        // Drops of every distinct type in hand. A drop only adds a blocker, so it
+        // never uncovers the drive.
+        int handTypes = board.getPlayer(lowerTurn).getHand().getTypeMask();
+        for (; handTypes != 0; handTypes &= handTypes - 1) {
+            int type = Integer.numberOfTrailingZeros(handTypes);
+            int targets = dropMask;
+            if (type == Piece.PREVIEW) {
+                targets &= ~zone;
+                for (int previews = board.getPieceBitboard(lowerTurn, Piece.PREVIEW); previews != 0;
+                        previews &= previews - 1) {
+                    targets &= ~Bitboards.colMask(Bitboards.col(Integer.numberOfTrailingZeros(previews)));
+                }
+            }
+            for (; targets != 0; targets &= targets - 1) {
+                int to = Integer.numberOfTrailingZeros(targets);
+                if (type == Piece.PREVIEW && isPreviewDropMate(board, lowerTurn, to)) {
+                    continue;
+                }
+                moves[count++] = Move.drop(type, to);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Function that checks whether the side to move is in check.
+     *
+     * @param board the position
+     * @return true if the drive of the side to move is attacked
+     */
+    public static boolean isInCheck(Board board) {
+        return board.isInCheck(board.getLowerTurn());
+    }
+
+    /**
+     * Function that finds the own pieces pinned to the drive: the only piece
+     * standing between the drive and an opponent notes or governance, promoted
+     * or not, that slides along that line. Such a piece can only move along it.
+     *
+     * @param board     the position
+     * @param lowerTurn whose pieces are looked at
+     * @param drive     the square of their drive
+     * @return the squares of the pinned pieces
+     */
+    static int pinnedPieces(Board board, boolean lowerTurn, int drive) {
+        int occupied = board.getOccupied();
+        int own = board.getSideBitboard(lowerTurn);
+        int notesLike = board.getPieceBitboard(!lowerTurn, Piece.NOTES)
+                | board.getPieceBitboard(!lowerTurn, Piece.PROMOTED_NOTES);
+        int governanceLike = board.getPieceBitboard(!lowerTurn, Piece.GOVERNANCE)
+                | board.getPieceBitboard(!lowerTurn, Piece.PROMOTED_GOVERNANCE);
+        int pinners = (Bitboards.rookAttacks(drive, 0) & notesLike)
+                | (Bitboards.bishopAttacks(drive, 0) & governanceLike);
+        int pinned = 0;
+        for (; pinners != 0; pinners &= pinners - 1) {
+            int blockers = Bitboards.between(drive, Integer.numberOfTrailingZeros(pinners)) & occupied;
+            if (blockers != 0 && (blockers & (blockers - 1)) == 0 && (blockers & own) != 0) {
+                pinned |= blockers;
+            }
+        }
+        return pinned;
+    }
+
+    /**
+     * Function that finds the squares sliding checkers would attack through the
+     * drive once it steps away.
+     *
+     * @param board     the position
+     * @param lowerTurn whose drive is checked
+     * @param drive     the square of the drive
+     * @param checkers  the pieces giving check
+     * @return the squares attacked with the drive taken off the board
+     */
+    private static int sliderAttacksThrough(Board board, boolean lowerTurn, int drive, int checkers) {
+        if (checkers == 0) {
+            return 0;
+        }
+        int withoutDrive = board.getOccupied() & ~Bitboards.bit(drive);
+        int squares = 0;
+        for (; checkers != 0; checkers &= checkers - 1) {
+            int checker = Integer.numberOfTrailingZeros(checkers);
+            int type = board.getPiece(checker).getType();
+            squares |= Bitboards.attacks(Piece.ruleOfType(type), Bitboards.side(!lowerTurn), checker, withoutDrive);
+        }
+        return squares;
+    }
+
+    /**
+     * Function that checks whether dropping a preview on a square checkmates the
+     * opponent right away, which the rules forbid.
+     *
+     * @param board     the position before the drop
+     * @param lowerTurn whether lower player drops the preview
+     * @param to        the square the preview would be dropped on
+     * @return true if the drop would be an immediate checkmate
+     */
+    public static boolean isPreviewDropMate(Board board, boolean lowerTurn, int to) {
+        int side = Bitboards.side(lowerTurn);
+        int theirDrive = board.getDriveSquare(!lowerTurn);
+        if (theirDrive < 0 || (Bitboards.stepAttacks(Bitboards.RULE_P, side, to) & Bitboards.bit(theirDrive)) == 0) {
+            return false;
+        }
+        // A preview only checks the square right in front of it, so the check cannot be
+        // blocked: the opponent has to capture the preview or step the drive away.
+        int occupied = board.getOccupied() | Bitboards.bit(to);
+        int capturers = board.attackersOf(to, !lowerTurn, occupied) & ~Bitboards.bit(theirDrive);
+        for (; capturers != 0; capturers &= capturers - 1) {
+            int from = Integer.numberOfTrailingZeros(capturers);
+            if (board.attackersOf(theirDrive, lowerTurn, occupied & ~Bitboards.bit(from)) == 0) {
+                return false;
+            }
+        }
+        int theirs = board.getSideBitboard(!lowerTurn);
+        int steps = Bitboards.stepAttacks(Bitboards.RULE_D, side, theirDrive) & ~theirs;
+        for (; steps != 0; steps &= steps - 1) {
+            int dest = Integer.numberOfTrailingZeros(steps);
+            int after = (occupied & ~Bitboards.bit(theirDrive)) | Bitboards.bit(dest);
+            if ((board.attackersOf(dest, lowerTurn, after) & ~Bitboards.bit(dest)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,20 @@
+package boxshogi;
+
+import java.io.IOException;
+
+/**
+ * Source of the commands replayed in file mode.
+ */
+public interface MoveSource {
+
+    /**
+     * Function that reads the next command, split into words on single spaces
+     * like String.split(" ") does.
+     *
+     * The returned array may be reused by the next call.
+     *
+     * @return the words of the next command, or null when there are no more
+     * @throws IOException If the command cannot be read, IOException would be triggerd.
+     */
+    String[] nextMove() throws IOException;
+}
@@ -0,0 +1,119 @@
+package boxshogi;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Class that counts the leaf nodes of the legal move tree of a position.
+ *
+ * The count at each depth only depends on the rules, so it is the reference a
+ * faster move generator has to reproduce. The subtree of every root move is
+ * counted on its own copy of the board by a ForkJoinPool task.
+ */
+public class Perft {
+
+    private final Board root;
+    private final int depth;
+
+    public Perft(Board root, int depth) {
+        this.root = root;
+        this.depth = depth;
+    }
+
+    /**
+     * Function that counts the leaves below a position, single threaded.
+     *
+     * @param board   the position, left unchanged on return
+     * @param depth   number of plies to go down
+     * @param buffers one move buffer per remaining ply
+     * @return the number of positions reached at that depth
+     */
+    public static long count(Board board, int depth, int[][] buffers) {
+        if (depth == 0) {
+            return 1;
+        }
+        int[] moves = buffers[depth - 1];
+        int moveCount = MoveGenerator.generateLegalMoves(board, moves);
+        // Every legal move is a leaf at the last ply, no need to make them.
+        if (depth == 1) {
+            return moveCount;
+        }
+        long nodes = 0;
+        for (int i = 0; i < moveCount; i++) {
+            board.makeMove(moves[i]);
+            nodes += count(board, depth - 1, buffers);
+            board.unmakeMove();
+        }
+        return nodes;
+    }
+
+    /**
+     * Function that runs perft on every core and prints the count of each root move.
+     *
+     * @param out where to print the divide and the summary
+     * @return the total number of leaves
+     */
+    public long divide(PrintStream out) {
+        int[] rootMoves = new int[MoveGenerator.MAX_MOVES];
+        int rootCount = depth == 0 ? 0 : MoveGenerator.generateLegalMoves(root, rootMoves);
+        long start = System.nanoTime();
+
+        ForkJoinPool pool = new ForkJoinPool();
+        List<SubtreeTask> tasks = new ArrayList<>();
+        try {
+            for (int i = 0; i < rootCount; i++) {
+                tasks.add(new SubtreeTask(root.copy(), rootMoves[i], depth - 1));
+            }
+            for (SubtreeTask task : tasks) {
+                pool.execute(task);
+            }
+
+            long nodes = depth == 0 ? 1 : 0;
+            for (SubtreeTask task : tasks) {
+                long subtree = task.join();
+                out.println(Move.toString(task.move) + ": " + subtree);
+                nodes += subtree;
+            }
+
+            long elapsed = Math.max(System.nanoTime() - start, 1);
+            out.println();
+            out.println("Depth: " + depth);
+            out.println("Moves: " + rootCount);
+            out.println("Nodes: " + nodes);
+            out.println("Time: " + (elapsed / 1000000) + " ms");
+            out.println("Nodes/sec: " + (long) (nodes * 1e9 / elapsed));
+            return nodes;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Task counting the subtree below one root move on its own board.
+     */
+    @SuppressWarnings("serial") // Tasks are never serialized.
+    private static class SubtreeTask extends RecursiveTask<Long> {
+
+        private final Board board;
+        private final int move;
+        private final int depth;
+
+        SubtreeTask(Board board, int move, int depth) {
+            this.board = board;
+            this.move = move;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            int[][] buffers = new int[Math.max(depth, 1)][MoveGenerator.MAX_MOVES];
+            board.makeMove(move);
+            long nodes = count(board, depth, buffers);
+            board.unmakeMove();
+            return nodes;
+        }
+    }
+}
@@ -1,166 +1,191 @@
 package boxshogi;
 
-public class Piece {
+/**
+ * Class to represent a piece of one player, such as a lower relay or a promoted
+ * UPPER notes.
+ *
+ * Pieces are immutable flyweights: there is one instance per side and kind,
+ * obtained with of or fromName, so promoting a piece means putting the
+ * promoted instance on the board rather than changing the piece.
+ */
+public final class Piece {
+
+    /** Piece type indices, the ordinals of PieceKind, used to address per-type bitboards. */
+    public static final int DRIVE = 0;
+    public static final int NOTES = 1;
+    public static final int GOVERNANCE = 2;
+    public static final int SHIELD = 3;
+    public static final int RELAY = 4;
+    public static final int PREVIEW = 5;
+    public static final int PROMOTED_NOTES = 6;
+    public static final int PROMOTED_GOVERNANCE = 7;
+    public static final int PROMOTED_RELAY = 8;
+    public static final int PROMOTED_PREVIEW = 9;
+    public static final int TYPE_COUNT = 10;
+
+    /** Names a captured piece is listed with in hand, indexed by side and then type. */
+    private static final String[][] HAND_NAMES = { { "d", "n", "g", "s", "r", "p" },
+            { "D", "N", "G", "S", "R", "P" } };
+
+    /** Type tables, indexed by type. */
+    private static final int[] PROMOTED_TYPE = new int[TYPE_COUNT];
+    private static final int[] BASE_TYPE = new int[TYPE_COUNT];
+    private static final int[] RULE_OF_TYPE = new int[TYPE_COUNT];
+
+    /** INSTANCES[side][type] is the only piece of that side and type. */
+    private static final Piece[][] INSTANCES = new Piece[2][TYPE_COUNT];
+
+    static {
+        for (PieceKind kind : PieceKind.values()) {
+            int type = kind.ordinal();
+            PROMOTED_TYPE[type] = kind.promoted() == null ? -1 : kind.promoted().ordinal();
+            BASE_TYPE[type] = kind.base().ordinal();
+            RULE_OF_TYPE[type] = kind.getRule();
+            INSTANCES[Bitboards.LOWER][type] = new Piece(kind, true);
+            INSTANCES[Bitboards.UPPER][type] = new Piece(kind, false);
+        }
+    }
 
     /** Private attributes*/
-    private String name;
-    private String rule;
-    private boolean isLower;
-    private boolean promoted;
-    
+    private final PieceKind kind;
+    private final boolean isLower;
+    private final String name;
+
     /** Constructor */
-    public Piece(String name, boolean isLower) {
+    private Piece(PieceKind kind, boolean isLower) {
+        this.kind = kind;
         this.isLower = isLower;
-        this.promoted = false;
-        // Ensure name is in correct case.
-        if (this.isLower) { this.name = name.toLowerCase(); }
-        else { this.name = name.toUpperCase(); }
-        if (name.length() == 1) {
-            this.rule = name;
-        } else {
-            promotedPiece();
-        }
+        String letter = String.valueOf(isLower ? kind.getLetter() : Character.toUpperCase(kind.getLetter()));
+        this.name = kind.isPromoted() ? "+" + letter : letter;
     }
 
-    /** <---------- Class getter ----------> **/
+    /**
+     * Function that returns the piece of a side and type.
+     *
+     * @param type    a type index
+     * @param isLower whether the piece belongs to lower player
+     * @return the shared instance
+     */
+    public static Piece of(int type, boolean isLower) {
+        return INSTANCES[Bitboards.side(isLower)][type];
+    }
 
-    public String getName() {
-        return name;
+    /**
+     * Function that returns the piece written like "p", "+N" or "R" in a game
+     * file, lowercase for lower player and uppercase for UPPER.
+     *
+     * @param name the piece name, a letter with an optional "+" before it
+     * @return the shared instance
+     * @throws IllegalArgumentException if the name is not a piece
+     */
+    public static Piece fromName(String name) {
+        boolean promoted = name.length() == 2 && name.charAt(0) == '+';
+        if (name.length() != (promoted ? 2 : 1)) {
+            throw new IllegalArgumentException("Invalid piece name: " + name);
+        }
+        char letter = name.charAt(name.length() - 1);
+        PieceKind kind = PieceKind.ofLetter(letter);
+        if (kind == null || (promoted && kind.promoted() == null)) {
+            throw new IllegalArgumentException("Invalid piece name: " + name);
+        }
+        return of((promoted ? kind.promoted() : kind).ordinal(), Character.isLowerCase(letter));
     }
 
-    public String getRule() {
-        return rule;
+    /**
+     * Function that returns the type index a type gets after promotion.
+     *
+     * @param type an unpromoted type index
+     * @return the promoted type index, or -1 if the type cannot be promoted
+     */
+    public static int promotedType(int type) {
+        return PROMOTED_TYPE[type];
     }
 
-    public boolean getIsLower() {
-        return isLower;
+    /**
+     * Function that returns the unpromoted type of a type, which is what a capture puts in hand.
+     *
+     * @param type a type index
+     * @return the unpromoted type index
+     */
+    public static int baseType(int type) {
+        return BASE_TYPE[type];
     }
 
-    public boolean getIsPromoted() {
-        return promoted;
+    public static int ruleOfType(int type) {
+        return RULE_OF_TYPE[type];
     }
 
     /**
-     * Function that check is given move on current piece follows the basic rule.
-     * @param dCol the col distance/direction the piece woule be move to
-     * @param dRow the row distance/direction the piece woule be move to
-     * @return a boolean - true means the move follows basic rule; false otherwise
+     * Function that returns the lowercase single letter name of an unpromoted type.
+     *
+     * @param type an unpromoted type index
+     * @return the letter used in drop commands and captures
      */
-    public boolean checkMoveFollowBasicRule(int dCol, int dRow) {
-        // If stay at same position
-        if (dCol == 0 && dRow == 0) {
-            return true;
-        }
-        
-        // Check basic rule when it is piece a box drive
-        if (rule.equalsIgnoreCase("d")) {
-            if (Math.abs(dCol) <= 1 && Math.abs(dRow) <= 1) {
-                return true;
-            }
-            return false;
-        }
+    public static String typeName(int type) {
+        return HAND_NAMES[Bitboards.LOWER][type];
+    }
 
-        // Check basic rule when it is piece a box note.
-        if (rule.equalsIgnoreCase("n")) {
-            if (dCol == 0 || dRow == 0) {
-                return true;
-            }
-            return false;
-        }
+    /**
+     * Function that returns the name a piece is listed with in the captures of a player.
+     *
+     * @param type    an unpromoted type index
+     * @param isLower whether the captures belong to lower player
+     * @return the letter, lowercase for lower player and uppercase otherwise
+     */
+    public static String handName(int type, boolean isLower) {
+        return HAND_NAMES[Bitboards.side(isLower)][type];
+    }
 
-        // Check basic rule when it is piece a box governance.
-        if (rule.equalsIgnoreCase("g")) {
-            if (Math.abs(dCol) == Math.abs(dRow)) {
-                return true;
-            }
-            return false;
-        }
+    /**
+     * Function that returns the unpromoted type of a letter, in either case.
+     *
+     * @param letter a piece letter such as 'p' or 'N'
+     * @return the type index, or -1 if the letter is not a piece
+     */
+    public static int typeOf(char letter) {
+        PieceKind kind = PieceKind.ofLetter(letter);
+        return kind == null ? -1 : kind.ordinal();
+    }
 
-        // Check basic rule when it is piece a box shield
-        if (rule.equalsIgnoreCase("s")) {
-            if ((Math.abs(dCol) <= 1 && Math.abs(dRow) <= 1)) {
-                if (dCol != 0 && ((isLower && dRow == -1)
-                        || (!isLower && dRow == 1))) {
-                    return false;
-                }
-                return true;
-            }
-            return false;
-        }
+    /** <---------- Class getter ----------> **/
 
-        // Check basic rule when it is piece a box relay.
-        if (rule.equalsIgnoreCase("r")) {
-            if ((Math.abs(dCol) <= 1 && Math.abs(dRow) <= 1)) {
-                if (dRow == 0 && dCol != 0) {
-                    return false;
-                }
-                if (dCol == 0 && ((isLower && dRow == -1)
-                        || (!isLower && dRow == 1))) {
-                    return false;
-                }
-                return true;
-            }
-            return false;
-        }
+    public String getName() {
+        return name;
+    }
 
-        // Check basic rule when it is piece a box preview.
-        if (rule.equalsIgnoreCase("p")) {
-            if (dCol == 0 && ((isLower && dRow == 1) || (!isLower && dRow == -1))) {
-                return true;
-            }
-            return false;
-        }
+    public PieceKind getKind() {
+        return kind;
+    }
 
-        // Check basic rule when it is piece a upgraded box governance.
-        if (rule.equalsIgnoreCase("gd")) {
-            if ((Math.abs(dCol) <= 1 && Math.abs(dRow) <= 1) 
-                    || (Math.abs(dCol) == Math.abs(dRow))) {
-                return true;
-            }
-            return false;
-        }
+    public boolean getIsLower() {
+        return isLower;
+    }
 
-        // Check basic rule when it is piece a upgraded box note.
-        if (rule.equalsIgnoreCase("nd")) {
-            if ((Math.abs(dCol) <= 1 && Math.abs(dRow) <= 1) 
-                    || (dCol == 0 || dRow == 0)) {
-                return true;
-            }
-            return false;
-        }
+    public boolean getIsPromoted() {
+        return kind.isPromoted();
+    }
 
-        // Logically, this return statement would not be reached.
-        System.out.println("Not sure what happened, but return false at the end of checkMoveFollowBasicRuleIn Piece class has been reached.");
-        return false;
+    public int getType() {
+        return kind.ordinal();
     }
 
     /**
-     * Function to promote a piece, more specifically, upgrade its rule.
+     * Function that returns this piece promoted.
+     *
+     * @return the promoted piece of the same side, or this piece if it cannot be promoted
      */
-    public void promotedPiece() {
-        // Changed their rule based on current rule.
-        switch (name.toLowerCase().charAt(name.length()-1)) {
-            case 'r':
-            case 'p':
-                this.rule = "s";
-                break;
-            case 'g':
-                this.rule = "gd";
-                break;
-            case 'n':
-                this.rule = "nd";
-                break;
-            default:
-                System.out.print("Something goes wrong in promotedPiece related to piece type.");
-                return;
-        }
-
-        // Append "+" after upgrade.
-        if (this.name.length() == 1) {
-            this.name = "+" + this.name;
-        }
+    public Piece promote() {
+        int promoted = PROMOTED_TYPE[kind.ordinal()];
+        return promoted < 0 ? this : INSTANCES[Bitboards.side(isLower)][promoted];
+    }
 
-        // Set promoted to be true
-        this.promoted = true;
+    /**
+     * Function that check is given move on current piece follows the basic rule.
+     * @param dCol the col distance/direction the piece woule be move to
+     * @param dRow the row distance/direction the piece woule be move to
+     * @return a boolean - true means the move follows basic rule; false otherwise
+     */
+    public boolean checkMoveFollowBasicRule(int dCol, int dRow) {
+        return kind.canReach(Bitboards.side(isLower), dCol, dRow);
     }
 }
@@ -0,0 +1,201 @@
+package boxshogi;
+
+/**
+ * Kinds of Box Shogi pieces, promoted forms included.
+ *
+ * Each kind carries its movement as tables: the single steps it can take and
+ * the directions it can slide along, both per side (UPPER moves are the LOWER
+ * ones mirrored top to bottom). The ordinal of a kind is its type index in
+ * Piece and in the per-type bitboards of Board.
+ */
+public enum PieceKind {
+
+    DRIVE('d', Bitboards.RULE_D, Deltas.DRIVE, Deltas.NONE),
+    NOTES('n', Bitboards.RULE_N, Deltas.NONE, Deltas.ORTHOGONAL),
+    GOVERNANCE('g', Bitboards.RULE_G, Deltas.NONE, Deltas.DIAGONAL),
+    SHIELD('s', Bitboards.RULE_S, Deltas.SHIELD, Deltas.NONE),
+    RELAY('r', Bitboards.RULE_R, Deltas.RELAY, Deltas.NONE),
+    PREVIEW('p', Bitboards.RULE_P, Deltas.PREVIEW, Deltas.NONE),
+    PROMOTED_NOTES('n', Bitboards.RULE_ND, Deltas.DRIVE, Deltas.ORTHOGONAL),
+    PROMOTED_GOVERNANCE('g', Bitboards.RULE_GD, Deltas.DRIVE, Deltas.DIAGONAL),
+    PROMOTED_RELAY('r', Bitboards.RULE_S, Deltas.SHIELD, Deltas.NONE),
+    PROMOTED_PREVIEW('p', Bitboards.RULE_S, Deltas.SHIELD, Deltas.NONE);
+
+    private static final PieceKind[] VALUES = values();
+
+    /** Deltas go from -4 to 4 on both axes, so a 9 by 9 table holds every displacement. */
+    private static final int REACH_WIDTH = 2 * Bitboards.BOARD_SIZE - 1;
+
+    private final char letter;
+    private final int rule;
+    private final int[][][] steps;
+    private final int[][][] slides;
+    private final boolean[][] reach;
+
+    PieceKind(char letter, int rule, int[][] lowerSteps, int[][] lowerSlides) {
+        this.letter = letter;
+        this.rule = rule;
+        this.steps = new int[][][] { lowerSteps, mirror(lowerSteps) };
+        this.slides = new int[][][] { lowerSlides, mirror(lowerSlides) };
+        this.reach = new boolean[2][REACH_WIDTH * REACH_WIDTH];
+        for (int side = Bitboards.LOWER; side <= Bitboards.UPPER; side++) {
+            // Staying on the same square has always been accepted by the basic rules.
+            reach[side][reachIndex(0, 0)] = true;
+            for (int[] step : steps[side]) {
+                reach[side][reachIndex(step[0], step[1])] = true;
+            }
+            for (int[] slide : slides[side]) {
+                for (int distance = 1; distance < Bitboards.BOARD_SIZE; distance++) {
+                    reach[side][reachIndex(slide[0] * distance, slide[1] * distance)] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Function that returns the kind of a type index.
+     *
+     * @param type a type index, see Piece
+     * @return the kind
+     */
+    public static PieceKind of(int type) {
+        return VALUES[type];
+    }
+
+    /**
+     * Function that returns the unpromoted kind of a letter, in either case.
+     *
+     * @param letter a piece letter such as 'p' or 'N'
+     * @return the kind, or null if the letter is not a piece
+     */
+    public static PieceKind ofLetter(char letter) {
+        char lower = Character.toLowerCase(letter);
+        for (int type = 0; type <= Piece.PREVIEW; type++) {
+            if (VALUES[type].letter == lower) {
+                return VALUES[type];
+            }
+        }
+        return null;
+    }
+
+    public char getLetter() {
+        return letter;
+    }
+
+    /**
+     * Function that returns the rule index of the kind, see Bitboards.
+     *
+     * @return one of the Bitboards.RULE_* indices
+     */
+    public int getRule() {
+        return rule;
+    }
+
+    public boolean isPromoted() {
+        return ordinal() > Piece.PREVIEW;
+    }
+
+    /**
+     * Function that returns the kind a piece of this kind becomes when promoted.
+     *
+     * @return the promoted kind, or null if this kind cannot be promoted
+     */
+    public PieceKind promoted() {
+        switch (this) {
+            case NOTES:
+                return PROMOTED_NOTES;
+            case GOVERNANCE:
+                return PROMOTED_GOVERNANCE;
+            case RELAY:
+                return PROMOTED_RELAY;
+            case PREVIEW:
+                return PROMOTED_PREVIEW;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Function that returns the kind a captured piece of this kind goes to hand as.
+     *
+     * @return the unpromoted kind
+     */
+    public PieceKind base() {
+        switch (this) {
+            case PROMOTED_NOTES:
+                return NOTES;
+            case PROMOTED_GOVERNANCE:
+                return GOVERNANCE;
+            case PROMOTED_RELAY:
+                return RELAY;
+            case PROMOTED_PREVIEW:
+                return PREVIEW;
+            default:
+                return this;
+        }
+    }
+
+    /**
+     * Function that returns the single steps of the kind.
+     *
+     * @param side LOWER or UPPER
+     * @return the {dCol, dRow} steps
+     */
+    public int[][] getSteps(int side) {
+        return steps[side];
+    }
+
+    /**
+     * Function that returns the directions the kind slides along.
+     *
+     * @param side LOWER or UPPER
+     * @return the {dCol, dRow} unit directions
+     */
+    public int[][] getSlides(int side) {
+        return slides[side];
+    }
+
+    /**
+     * Function that checks a displacement against the basic rule of the kind,
+     * ignoring the pieces in between.
+     *
+     * @param side LOWER or UPPER
+     * @param dCol the col distance/direction of the move
+     * @param dRow the row distance/direction of the move
+     * @return true if the kind can move that way on an empty board
+     */
+    public boolean canReach(int side, int dCol, int dRow) {
+        int limit = Bitboards.BOARD_SIZE - 1;
+        if (dCol < -limit || dCol > limit || dRow < -limit || dRow > limit) {
+            return false;
+        }
+        return reach[side][reachIndex(dCol, dRow)];
+    }
+
+    private static int reachIndex(int dCol, int dRow) {
+        return (dCol + Bitboards.BOARD_SIZE - 1) * REACH_WIDTH + dRow + Bitboards.BOARD_SIZE - 1;
+    }
+
+    private static int[][] mirror(int[][] deltas) {
+        int[][] mirrored = new int[deltas.length][];
+        for (int i = 0; i < deltas.length; i++) {
+            mirrored[i] = new int[] { deltas[i][0], -deltas[i][1] };
+        }
+        return mirrored;
+    }
+
+    /**
+     * Deltas seen from the lower player, forward is a positive row delta. They
+     * live in their own class so the enum constants can use them.
+     */
+    private static final class Deltas {
+        static final int[][] NONE = {};
+        static final int[][] DRIVE = { { -1, -1 }, { 0, -1 }, { 1, -1 }, { -1, 0 }, { 1, 0 }, { -1, 1 }, { 0, 1 },
+                { 1, 1 } };
+        static final int[][] SHIELD = { { 0, -1 }, { -1, 0 }, { 1, 0 }, { -1, 1 }, { 0, 1 }, { 1, 1 } };
+        static final int[][] RELAY = { { -1, -1 }, { 1, -1 }, { -1, 1 }, { 0, 1 }, { 1, 1 } };
+        static final int[][] PREVIEW = { { 0, 1 } };
+        static final int[][] ORTHOGONAL = { { 0, 1 }, { 1, 0 }, { 0, -1 }, { -1, 0 } };
+        static final int[][] DIAGONAL = { { 1, 1 }, { -1, 1 }, { -1, -1 }, { 1, -1 } };
+    }
+}
@@ -0,0 +1,115 @@
+package boxshogi;
+
+import java.util.Arrays;
+
+/**
+ * Class to represent the pieces one player has on the board, as a list that
+ * can be walked by index.
+ *
+ * Entries live in two parallel arrays, the square and the type of each piece,
+ * and a back map from square to index finds the entry of a square directly.
+ * Adding, removing and moving a piece are constant time (a removal fills the
+ * hole with the last entry), and walking the list allocates nothing. Two
+ * pieces of the same type, as after a capture and a drop, are simply two
+ * entries.
+ */
+public final class PieceList {
+
+    /** A side can never have more pieces than there are squares. */
+    public static final int CAPACITY = Bitboards.SQUARE_COUNT;
+
+    private final int[] squares = new int[CAPACITY];
+    private final int[] types = new int[CAPACITY];
+    private final int[] indices = new int[Bitboards.SQUARE_COUNT];
+    private int size;
+
+    public PieceList() {
+        Arrays.fill(indices, -1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Function that returns the square of an entry.
+     *
+     * @param index an index below size()
+     * @return the square of the piece
+     */
+    public int square(int index) {
+        return squares[index];
+    }
+
+    /**
+     * Function that returns the type of an entry.
+     *
+     * @param index an index below size()
+     * @return the type index of the piece, see Piece
+     */
+    public int type(int index) {
+        return types[index];
+    }
+
+    /**
+     * Function that returns the entry of the piece on a square.
+     *
+     * @param sq the square, see Bitboards
+     * @return the index of the entry, or -1 if no piece of this list is there
+     */
+    public int indexOf(int sq) {
+        return indices[sq];
+    }
+
+    /**
+     * Function that adds a piece.
+     *
+     * @param sq   an empty square
+     * @param type the type index of the piece
+     */
+    public void add(int sq, int type) {
+        squares[size] = sq;
+        types[size] = type;
+        indices[sq] = size;
+        size++;
+    }
+
+    /**
+     * Function that removes the piece on a square.
+     *
+     * @param sq a square holding a piece of this list
+     */
+    public void remove(int sq) {
+        int index = indices[sq];
+        indices[sq] = -1;
+        size--;
+        if (index != size) {
+            squares[index] = squares[size];
+            types[index] = types[size];
+            indices[squares[index]] = index;
+        }
+    }
+
+    /**
+     * Function that moves the piece on a square to another square.
+     *
+     * @param from a square holding a piece of this list
+     * @param to   an empty square
+     */
+    public void move(int from, int to) {
+        int index = indices[from];
+        indices[from] = -1;
+        indices[to] = index;
+        squares[index] = to;
+    }
+
+    /**
+     * Function that changes the type of the piece on a square, as a promotion does.
+     *
+     * @param sq   a square holding a piece of this list
+     * @param type the new type index
+     */
+    public void setType(int sq, int type) {
+        types[indices[sq]] = type;
+    }
+}
@@ -1,10 +1,6 @@
 package boxshogi;
 
-import java.util.AbstractMap;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 public class Player {
 
@@ -12,9 +8,7 @@ public class Player {
     private String playerName;
     private boolean lowerTurn;
     private boolean isInCheck;
-    private List<String> captures;
-    private AbstractMap.SimpleEntry<Integer, Integer> drivePosition;
-    private Map<String, AbstractMap.SimpleEntry<Integer, Integer>> piecePosition;
+    private Hand hand;
 
     /** Constructor */
     public Player(boolean lowerTurn) {
@@ -22,8 +16,7 @@ public class Player {
         else { this.playerName = "UPPER"; }
         this.lowerTurn = lowerTurn;
         this.isInCheck = false;
-        this.captures = new LinkedList<>();
-        this.piecePosition = new HashMap<>();
+        this.hand = new Hand(lowerTurn);
     }
 
     /** <-------------------- Player names related operations --------------------> **/
@@ -43,64 +36,36 @@ public class Player {
         isInCheck = inCheck;
     }
 
-    /** <-------------------- Drive position related operations --------------------> **/
-
-    public void setDrivePosition(AbstractMap.SimpleEntry<Integer, Integer> position) {
-        drivePosition = position;
-    }
-
-    public AbstractMap.SimpleEntry<Integer, Integer> getDrivePosition() {
-        return drivePosition;
-    }
-
     /** <-------------------- Captures related operations --------------------> **/
 
-    public void addCaptures(String capturedPiece) {
-        if (lowerTurn) {
-            captures.add(capturedPiece.toLowerCase());
-        } else {
-            captures.add(capturedPiece.toUpperCase());
-        }
-    }
-
-    public void removeCaptures(String capturedPiece) {
-        captures.remove(capturedPiece);
-    }
-
-    public void containCaptures(String capturedPiece) {
-        captures.remove(capturedPiece);
+    public Hand getHand() {
+        return hand;
     }
 
+    /**
+     * Function that replaces the captures with the pieces named in a list.
+     *
+     * @param capTures names like "p" or "N", in display order
+     * @throws IllegalArgumentException if a name is not an unpromoted piece of this player
+     */
     public void setCaptures(List<String> capTures) {
-        captures = new LinkedList<>(capTures);
-    }
-
-    public List<String> getCaptures() {
-        return captures;
-    }
-
-
-    /** <-------------------- Piece position related operations --------------------> **/
-    
-    public void addAPiecePosition(String pieceName, int col, int row) {
-        piecePosition.put(pieceName, new AbstractMap.SimpleEntry<>(col, row));
-    }
-
-    public void removeAPiecePosition(String pieceName) {
-        piecePosition.remove(pieceName);
-    }
-
-    public AbstractMap.SimpleEntry<Integer, Integer> getPiecePosition(String pieceName) {
-        if (lowerTurn) {
-            pieceName = pieceName.toLowerCase();
-        } else {
-            pieceName = pieceName.toUpperCase();
+        hand.clear();
+        for (String eachCapture : capTures) {
+            int type = eachCapture.length() == 1 ? Piece.typeOf(eachCapture.charAt(0)) : -1;
+            if (type < 0 || !Piece.handName(type, lowerTurn).equals(eachCapture)) {
+                throw new IllegalArgumentException("Invalid capture of " + playerName + " player: " + eachCapture);
+            }
+            hand.add(type);
         }
-        return piecePosition.get(pieceName);
     }
 
-    public Map<String, AbstractMap.SimpleEntry<Integer, Integer>> getPiecePosition() {
-        return piecePosition;
+    /**
+     * Function that returns the names of the captures.
+     *
+     * @return a new list of the names in display order
+     */
+    public List<String> getCaptures() {
+        return hand.getNames();
     }
 
 }
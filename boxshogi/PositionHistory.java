@@ -0,0 +1,88 @@
+package boxshogi;
+
+import java.util.Arrays;
+
+/**
+ * Class to represent the positions of a game so far, as a stack of Zobrist
+ * keys.
+ *
+ * Each entry holds the key of a position, side to move and captures included,
+ * and whether the side to move was in check there, that is whether the move
+ * leading to it gave check. A position can only repeat with the same side to
+ * move, so looking for earlier occurrences only compares every other entry.
+ */
+public final class PositionHistory {
+
+    /** How many times a position must appear for the repetition rules to apply. */
+    public static final int REPETITIONS = 4;
+
+    private long[] keys = new long[64];
+    private boolean[] checks = new boolean[64];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Function that adds the position reached by the last move.
+     *
+     * @param key     the key of the position, see Board.getKey
+     * @param inCheck whether the side to move is in check
+     */
+    public void push(long key, boolean inCheck) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            checks = Arrays.copyOf(checks, size * 2);
+        }
+        keys[size] = key;
+        checks[size] = inCheck;
+        size++;
+    }
+
+    /**
+     * Function that counts how often the last position has appeared, itself included.
+     *
+     * @return the number of occurrences, 0 if the history is empty
+     */
+    public int getRepetitions() {
+        if (size == 0) {
+            return 0;
+        }
+        long key = keys[size - 1];
+        int count = 1;
+        for (int i = size - 3; i >= 0; i -= 2) {
+            if (keys[i] == key) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Function that tells whether one side gave check with every one of its moves
+     * since the last position first appeared.
+     *
+     * @param byLastMover true for the side that played the last move, false for the other
+     * @return true if every position that side's moves led to was a check
+     */
+    public boolean isPerpetualCheck(boolean byLastMover) {
+        long key = keys[size - 1];
+        int first = size - 1;
+        for (int i = size - 3; i >= 0; i -= 2) {
+            if (keys[i] == key) {
+                first = i;
+            }
+        }
+        int last = byLastMover ? size - 1 : size - 2;
+        if (last <= first) {
+            return false;
+        }
+        for (int i = last; i > first; i -= 2) {
+            if (!checks[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,50 @@
+package boxshogi;
+
+/**
+ * Rules for a game that keeps coming back to the same position.
+ *
+ * The original game has no such rule: a game only ends by checkmate, an
+ * illegal move or the tie after BoxShogi.MAX_TURN moves, and that remains the
+ * default. The other rules end a game as soon as the same position, with the
+ * same side to move and the same captures, has been seen
+ * PositionHistory.REPETITIONS times.
+ */
+public enum RepetitionRule {
+
+    /** No repetition rule, only the move limit ends a cycling game. */
+    STRICT("strict"),
+    /** A repeated position is a tie. */
+    FOURFOLD("fourfold"),
+    /**
+     * A repeated position is a tie, unless one side gave check with every move
+     * since it first appeared: that side loses.
+     */
+    PERPETUAL_CHECK("perpetual");
+
+    private final String name;
+
+    RepetitionRule(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Function that finds a rule by its command line name.
+     *
+     * @param name "strict", "fourfold" or "perpetual"
+     * @return the rule
+     * @throws IllegalArgumentException if no rule has that name
+     */
+    public static RepetitionRule parse(String name) {
+        for (RepetitionRule rule : values()) {
+            if (rule.name.equals(name)) {
+                return rule;
+            }
+        }
+        throw new IllegalArgumentException("Invalid repetition rule: " + name);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
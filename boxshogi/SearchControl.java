@@ -0,0 +1,52 @@
+package boxshogi;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class holding the limits and the stop signal shared by the threads searching
+ * one move.
+ */
+class SearchControl {
+
+    private final long deadline;
+    private final long maxNodes;
+    private final AtomicLong nodes;
+    private volatile boolean stopped;
+
+    /**
+     * Constructor.
+     *
+     * @param deadline System.nanoTime() after which the search stops
+     * @param maxNodes number of nodes, over all threads, after which the search stops
+     */
+    SearchControl(long deadline, long maxNodes) {
+        this.deadline = deadline;
+        this.maxNodes = maxNodes;
+        this.nodes = new AtomicLong();
+    }
+
+    void addNodes(long batch) {
+        nodes.addAndGet(batch);
+    }
+
+    /**
+     * Function that raises the stop signal once the time or the nodes run out.
+     */
+    void checkLimits() {
+        if (nodes.get() >= maxNodes || System.nanoTime() >= deadline) {
+            stopped = true;
+        }
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+
+    void stop() {
+        stopped = true;
+    }
+
+    long getNodes() {
+        return nodes.get();
+    }
+}
@@ -0,0 +1,398 @@
+package boxshogi;
+
+/**
+ * Class running a negamax alpha-beta search on its own copy of a position.
+ *
+ * Moves come from MoveGenerator, so the search plays by the same rules as the
+ * game: forced preview promotion, the preview drop checkmate ban and the tie
+ * after the last allowed move. Having no legal move loses, as any move would
+ * then be illegal.
+ *
+ * Several searchers can work on the same move, each on its own board, sharing
+ * a transposition table and a SearchControl. Only the searcher that enforces
+ * the limits stops the others.
+ */
+class Searcher {
+
+    static final int MAX_PLY = 64;
+    static final int MATE = 100000;
+    static final int INFINITY = MATE + 1;
+    static final int DRAW = 0;
+
+    private static final int LIMIT_CHECK_INTERVAL = 1023;
+    private static final int HASH_MOVE_BONUS = 1 << 21;
+    private static final int PV_BONUS = 1 << 20;
+    private static final int CAPTURE_BONUS = 1 << 16;
+    private static final int KILLER_BONUS = 1 << 15;
+    private static final int PROMOTION_BONUS = 800;
+
+    private final Board board;
+    private final int pliesLeft;
+    private final SearchControl control;
+    private final TranspositionTable table;
+    private final boolean enforcesLimits;
+
+    private final int[][] moves = new int[MAX_PLY + 1][MoveGenerator.MAX_MOVES];
+    private final int[][] orderScores = new int[MAX_PLY + 1][MoveGenerator.MAX_MOVES];
+    private final int[][] pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+    private final int[] previousPv = new int[MAX_PLY + 1];
+    private final int[][] killers = new int[MAX_PLY + 1][2];
+
+    private long nodes;
+    private final TranspositionTable.Stats tableStats = new TranspositionTable.Stats();
+    private boolean limitsActive;
+    private boolean aborted;
+
+    /**
+     * Constructor.
+     *
+     * @param board          the position to search, owned by this searcher from now on
+     * @param pliesLeft      how many moves can be played before the game is a tie
+     * @param control        the limits and stop signal shared with the other searchers
+     * @param table          the transposition table shared with the other searchers
+     * @param enforcesLimits true for the one searcher that checks the limits
+     */
+    Searcher(Board board, int pliesLeft, SearchControl control, TranspositionTable table, boolean enforcesLimits) {
+        this.board = board;
+        this.pliesLeft = pliesLeft;
+        this.control = control;
+        this.table = table;
+        this.enforcesLimits = enforcesLimits;
+    }
+
+    /**
+     * Function that searches the root to a fixed depth.
+     *
+     * The principal variation of the last call is tried first at every ply. The
+     * limits are only enforced once a first iteration has completed, so there is
+     * always a move to play.
+     *
+     * @param depth the depth in plies
+     * @return the score of the root, meaningless if the search was aborted
+     */
+    int searchRoot(int depth) {
+        for (int ply = 0; ply < pvLength[0]; ply++) {
+            previousPv[ply] = pv[0][ply];
+        }
+        for (int ply = pvLength[0]; ply <= MAX_PLY; ply++) {
+            previousPv[ply] = Move.NONE;
+        }
+        int score = negamax(depth, -INFINITY, INFINITY, 0);
+        limitsActive = true;
+        return score;
+    }
+
+    int getBestMove() {
+        return pvLength[0] > 0 ? pv[0][0] : Move.NONE;
+    }
+
+    /**
+     * Function that writes the principal variation found by the last search.
+     *
+     * @return the moves, separated by commas
+     */
+    String getPrincipalVariation() {
+        StringBuilder line = new StringBuilder();
+        for (int ply = 0; ply < pvLength[0]; ply++) {
+            if (ply > 0) {
+                line.append(", ");
+            }
+            line.append(Move.toString(pv[0][ply]));
+        }
+        return line.toString();
+    }
+
+    long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Function that returns the nodes not yet added to the shared count.
+     *
+     * @return nodes searched since the last report to the SearchControl
+     */
+    long getUnreportedNodes() {
+        return nodes & LIMIT_CHECK_INTERVAL;
+    }
+
+    /**
+     * Transposition table statistics getter, counted by this searcher alone.
+     *
+     * @return the lookups and stores of this searcher so far
+     */
+    TranspositionTable.Stats getTableStats() {
+        return tableStats;
+    }
+
+    boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Function that searches a node with negamax and alpha-beta pruning.
+     *
+     * @param depth remaining depth in plies
+     * @param alpha lower bound of the window
+     * @param beta  upper bound of the window
+     * @param ply   distance from the root
+     * @return the score of the node for the side to move
+     */
+    private int negamax(int depth, int alpha, int beta, int ply) {
+        if (depth <= 0 || ply >= MAX_PLY) {
+            return quiescence(alpha, beta, ply);
+        }
+        pvLength[ply] = ply;
+        if (countNode()) {
+            return DRAW;
+        }
+        if (ply > 0 && ply >= pliesLeft) {
+            return DRAW;
+        }
+
+        long key = board.getKey();
+        long entry = table.probe(key);
+        tableStats.probes++;
+        int hashMove = Move.NONE;
+        if (entry != 0) {
+            tableStats.hits++;
+            hashMove = TranspositionTable.move(entry);
+            if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                int score = scoreFromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.BOUND_EXACT
+                        || (bound == TranspositionTable.BOUND_LOWER && score >= beta)
+                        || (bound == TranspositionTable.BOUND_UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        int[] nodeMoves = moves[ply];
+        int count = MoveGenerator.generateLegalMoves(board, nodeMoves);
+        if (count == 0) {
+            return -MATE + ply;
+        }
+        scoreMoves(ply, count, hashMove);
+
+        int originalAlpha = alpha;
+        int bestMove = Move.NONE;
+        int best = -INFINITY;
+        for (int i = 0; i < count; i++) {
+            int move = pickNextMove(ply, i, count);
+            board.makeMove(move);
+            int score = -negamax(depth - 1, -beta, -alpha, ply + 1);
+            board.unmakeMove();
+            if (aborted) {
+                return DRAW;
+            }
+            if (score > best) {
+                best = score;
+                bestMove = move;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePrincipalVariation(ply, move);
+                    if (alpha >= beta) {
+                        storeKiller(ply, move);
+                        break;
+                    }
+                }
+            }
+        }
+        int bound = best >= beta ? TranspositionTable.BOUND_LOWER
+                : best > originalAlpha ? TranspositionTable.BOUND_EXACT : TranspositionTable.BOUND_UPPER;
+        tableStats.stores++;
+        if (table.store(key, bestMove, scoreToTable(best, ply), depth, bound)) {
+            tableStats.evictions++;
+        }
+        return best;
+    }
+
+    /**
+     * Function that makes a mate score relative to the node before storing it,
+     * so it stays right when the position is reached at another ply.
+     *
+     * @param score the score relative to the root
+     * @param ply   distance from the root
+     * @return the score relative to the node
+     */
+    private static int scoreToTable(int score, int ply) {
+        if (score >= MATE - MAX_PLY) {
+            return score + ply;
+        }
+        if (score <= -MATE + MAX_PLY) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    private static int scoreFromTable(int score, int ply) {
+        if (score >= MATE - MAX_PLY) {
+            return score - ply;
+        }
+        if (score <= -MATE + MAX_PLY) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    /**
+     * Function that searches captures only until the position is quiet.
+     *
+     * When the side to move is in check every evasion is searched instead, since
+     * standing still is not an option.
+     *
+     * @param alpha lower bound of the window
+     * @param beta  upper bound of the window
+     * @param ply   distance from the root
+     * @return the score of the node for the side to move
+     */
+    private int quiescence(int alpha, int beta, int ply) {
+        pvLength[ply] = ply;
+        if (countNode()) {
+            return DRAW;
+        }
+        if (ply >= pliesLeft) {
+            return DRAW;
+        }
+
+        int[] nodeMoves = moves[ply];
+        int count = MoveGenerator.generateLegalMoves(board, nodeMoves);
+        if (count == 0) {
+            return -MATE + ply;
+        }
+        boolean inCheck = MoveGenerator.isInCheck(board);
+        int best = -INFINITY;
+        if (!inCheck || ply >= MAX_PLY) {
+            best = Evaluation.evaluate(board);
+            if (best >= beta || ply >= MAX_PLY) {
+                return best;
+            }
+            alpha = Math.max(alpha, best);
+        }
+        scoreMoves(ply, count, Move.NONE);
+
+        for (int i = 0; i < count; i++) {
+            int move = pickNextMove(ply, i, count);
+            if (!inCheck && !isCapture(move)) {
+                continue;
+            }
+            board.makeMove(move);
+            int score = -quiescence(-beta, -alpha, ply + 1);
+            board.unmakeMove();
+            if (aborted) {
+                return DRAW;
+            }
+            if (score > best) {
+                best = score;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePrincipalVariation(ply, move);
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Function that counts a node and, now and then, reports the count and
+     * looks for the stop signal.
+     *
+     * @return true if the search has to stop
+     */
+    private boolean countNode() {
+        nodes++;
+        if ((nodes & LIMIT_CHECK_INTERVAL) == 0) {
+            control.addNodes(LIMIT_CHECK_INTERVAL + 1);
+            if (enforcesLimits && limitsActive) {
+                control.checkLimits();
+            }
+            aborted = control.isStopped();
+        }
+        return aborted;
+    }
+
+    private boolean isCapture(int move) {
+        return !Move.isDrop(move) && board.getPiece(Move.to(move)) != null;
+    }
+
+    /**
+     * Function that gives every move of a ply an ordering score: the move from
+     * the transposition table first, then the previous principal variation, then
+     * captures of valuable pieces by cheap ones, then killer moves and promotions.
+     *
+     * @param ply      distance from the root
+     * @param count    number of moves generated at that ply
+     * @param hashMove the best move stored for the position, or Move.NONE
+     */
+    private void scoreMoves(int ply, int count, int hashMove) {
+        Evaluation evaluation = board.getEvaluation();
+        int[] nodeMoves = moves[ply];
+        int[] scores = orderScores[ply];
+        for (int i = 0; i < count; i++) {
+            int move = nodeMoves[i];
+            int score = 0;
+            if (move == hashMove) {
+                score += HASH_MOVE_BONUS;
+            }
+            if (move == previousPv[ply]) {
+                score += PV_BONUS;
+            }
+            if (isCapture(move)) {
+                score += CAPTURE_BONUS + evaluation.pieceValue(board.getPiece(Move.to(move)).getType()) * 8
+                        - evaluation.pieceValue(board.getPiece(Move.from(move)).getType()) / 8;
+            } else if (move == killers[ply][0] || move == killers[ply][1]) {
+                score += KILLER_BONUS;
+            }
+            if (Move.isPromotion(move)) {
+                score += PROMOTION_BONUS;
+            }
+            scores[i] = score;
+        }
+    }
+
+    /**
+     * Function that moves the best scored remaining move to position i and returns it.
+     *
+     * @param ply   distance from the root
+     * @param i     the position to fill
+     * @param count number of moves generated at that ply
+     * @return the move now at position i
+     */
+    private int pickNextMove(int ply, int i, int count) {
+        int[] nodeMoves = moves[ply];
+        int[] scores = orderScores[ply];
+        int bestIndex = i;
+        for (int j = i + 1; j < count; j++) {
+            if (scores[j] > scores[bestIndex]) {
+                bestIndex = j;
+            }
+        }
+        int move = nodeMoves[bestIndex];
+        int score = scores[bestIndex];
+        nodeMoves[bestIndex] = nodeMoves[i];
+        scores[bestIndex] = scores[i];
+        nodeMoves[i] = move;
+        scores[i] = score;
+        return move;
+    }
+
+    private void updatePrincipalVariation(int ply, int move) {
+        pv[ply][ply] = move;
+        for (int next = ply + 1; next < pvLength[ply + 1]; next++) {
+            pv[ply][next] = pv[ply + 1][next];
+        }
+        pvLength[ply] = Math.max(pvLength[ply + 1], ply + 1);
+    }
+
+    private void storeKiller(int ply, int move) {
+        if (isCapture(move) || killers[ply][0] == move) {
+            return;
+        }
+        killers[ply][1] = killers[ply][0];
+        killers[ply][0] = move;
+    }
+}
@@ -0,0 +1,301 @@
+package boxshogi;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that plays a match of many games between two engine players.
+ *
+ * Games are full BoxShogi games with a computer player on both sides, so they
+ * end the way a game against a person does: checkmate, an illegal move, a
+ * tie after MAX_TURN moves, or the repetition rule of the match. They run in
+ * parallel, each worker thread keeping its own pair of engines and playing
+ * games until the match is done.
+ *
+ * Engine searches are deterministic, so each pair of games starts from the
+ * same few random moves, with the engines swapping sides for the second
+ * game. The result is reported from the point of view of engine A: wins,
+ * draws, losses, the Elo difference with a 95% confidence interval, and the
+ * number of games played per second.
+ */
+public class SelfPlay {
+
+    /**
+     * Settings of one engine player, read from a string like
+     * "depth=4,nodes=20000,movetime=100,hash=16". With "weights=file" the
+     * alpha-beta player scores positions with the evaluation weights of a file.
+     * With "engine=mcts" the player is an MctsEngine, nodes then counting
+     * playouts and depth being ignored.
+     */
+    public static class EngineSpec {
+        long moveTime = 0;
+        long nodes = 0;
+        int depth = 3;
+        long hashMegabytes = AlphaBetaEngine.DEFAULT_HASH_MEGABYTES;
+        boolean mcts = false;
+        String weightsFile = null;
+        Evaluation evaluation = Evaluation.DEFAULT;
+
+        /**
+         * Function that reads engine settings.
+         *
+         * @param text comma separated key=value pairs, keys engine, movetime, nodes, depth, hash and weights
+         * @return the settings
+         * @throws IllegalArgumentException if a key or value is not understood, or the weights cannot be read
+         */
+        public static EngineSpec parse(String text) {
+            EngineSpec spec = new EngineSpec();
+            for (String pair : text.split(",")) {
+                String[] parts = pair.split("=");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Invalid engine setting: " + pair);
+                }
+                if (parts[0].equals("movetime")) {
+                    spec.moveTime = Long.parseLong(parts[1]);
+                } else if (parts[0].equals("nodes")) {
+                    spec.nodes = Long.parseLong(parts[1]);
+                } else if (parts[0].equals("depth")) {
+                    spec.depth = Integer.parseInt(parts[1]);
+                } else if (parts[0].equals("engine") && (parts[1].equals("mcts") || parts[1].equals("alphabeta"))) {
+                    spec.mcts = parts[1].equals("mcts");
+                } else if (parts[0].equals("hash")) {
+                    spec.hashMegabytes = Long.parseLong(parts[1]);
+                } else if (parts[0].equals("weights")) {
+                    try {
+                        spec.evaluation = Evaluation.load(parts[1]);
+                    } catch (IOException e) {
+                        throw new IllegalArgumentException(e.getMessage(), e);
+                    }
+                    spec.weightsFile = parts[1];
+                } else {
+                    throw new IllegalArgumentException("Invalid engine setting: " + pair);
+                }
+            }
+            if (spec.moveTime <= 0 && spec.nodes <= 0 && spec.depth <= 0) {
+                throw new IllegalArgumentException("Engine needs a depth, node or time limit: " + text);
+            }
+            return spec;
+        }
+
+        ComputerPlayer newEngine() {
+            if (mcts) {
+                return new MctsEngine(moveTime, nodes, 1);
+            }
+            AlphaBetaEngine engine = new AlphaBetaEngine(moveTime, nodes, depth > 0 ? depth : Searcher.MAX_PLY, 1,
+                    hashMegabytes);
+            engine.setEvaluation(evaluation);
+            return engine;
+        }
+
+        @Override
+        public String toString() {
+            if (mcts) {
+                return "engine=mcts,nodes=" + nodes + ",movetime=" + moveTime;
+            }
+            return "depth=" + depth + ",nodes=" + nodes + ",movetime=" + moveTime + ",hash=" + hashMegabytes
+                    + (weightsFile != null ? ",weights=" + weightsFile : "");
+        }
+    }
+
+    private final int games;
+    private final int threads;
+    private final int openingPlies;
+    private final EngineSpec engineA;
+    private final EngineSpec engineB;
+    private final RepetitionRule repetitionRule;
+
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private final AtomicInteger wins = new AtomicInteger();
+    private final AtomicInteger draws = new AtomicInteger();
+    private final AtomicInteger losses = new AtomicInteger();
+
+    /**
+     * Constructor.
+     *
+     * @param games          number of games to play
+     * @param threads        number of games played at once
+     * @param openingPlies   number of random moves each game starts with
+     * @param engineA        settings of engine A, lower player in even games
+     * @param engineB        settings of engine B
+     * @param repetitionRule what ends a game that repeats a position
+     */
+    public SelfPlay(int games, int threads, int openingPlies, EngineSpec engineA, EngineSpec engineB,
+            RepetitionRule repetitionRule) {
+        this.games = Math.max(games, 1);
+        this.threads = Math.max(Math.min(threads, this.games), 1);
+        this.openingPlies = Math.max(openingPlies, 0);
+        this.engineA = engineA;
+        this.engineB = engineB;
+        this.repetitionRule = repetitionRule;
+    }
+
+    /**
+     * Function that plays the match and prints the result.
+     *
+     * @param out where to print the result
+     * @throws IOException If a game fails, IOException would be triggerd.
+     */
+    public void run(PrintStream out) throws IOException {
+        out.println("Engine A: " + engineA + "  Engine B: " + engineB);
+        out.println("Games: " + games + "  Threads: " + threads + "  Random opening plies: " + openingPlies
+                + "  Repetition rule: " + repetitionRule);
+        long start = System.nanoTime();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                workers.add(pool.submit(() -> {
+                    playGames();
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted", e);
+                } catch (ExecutionException e) {
+                    throw new IOException("Game failed", e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        printResult(out, seconds);
+    }
+
+    /**
+     * Function run by each worker: take the next game number until all games are played.
+     *
+     * @throws IOException If a game fails, IOException would be triggerd.
+     */
+    private void playGames() throws IOException {
+        ComputerPlayer a = engineA.newEngine();
+        ComputerPlayer b = engineB.newEngine();
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        for (int game = nextGame.getAndIncrement(); game < games; game = nextGame.getAndIncrement()) {
+            boolean aIsLower = game % 2 == 0;
+            long openingSeed = game / 2;
+            BoxShogi match = new BoxShogi(new ByteArrayInputStream(new byte[0]), discard, 1);
+            match.setRepetitionRule(repetitionRule);
+            match.setComputerPlayer(aIsLower, new RandomOpening(a, openingPlies, openingSeed));
+            match.setComputerPlayer(!aIsLower, new RandomOpening(b, openingPlies, openingSeed));
+            match.gameStart();
+            int scoreOfA = aIsLower ? match.getOutcome() : -match.getOutcome();
+            if (scoreOfA > 0) {
+                wins.incrementAndGet();
+            } else if (scoreOfA < 0) {
+                losses.incrementAndGet();
+            } else {
+                draws.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Function that prints the counts, the Elo difference and the throughput.
+     *
+     * @param out     where to print
+     * @param seconds wall time of the match
+     */
+    private void printResult(PrintStream out, double seconds) {
+        int w = wins.get();
+        int d = draws.get();
+        int l = losses.get();
+        int n = w + d + l;
+        double score = (w + 0.5 * d) / n;
+        // Standard error of the mean score per game, for a 95% interval.
+        double variance = (w * Math.pow(1 - score, 2) + d * Math.pow(0.5 - score, 2) + l * Math.pow(score, 2)) / n;
+        double margin = 1.96 * Math.sqrt(variance / n);
+        double elo = elo(score);
+        double low = elo(score - margin);
+        double high = elo(score + margin);
+
+        out.println();
+        out.println("Engine A wins: " + w + "  Draws: " + d + "  Losses: " + l);
+        out.println(String.format(Locale.ROOT, "Score: %.1f%%", 100 * score));
+        if (Double.isInfinite(elo)) {
+            out.println("Elo difference: " + (elo > 0 ? "+inf" : "-inf"));
+        } else {
+            out.println(String.format(Locale.ROOT, "Elo difference: %+.1f +/- %.1f (95%% interval %s to %s)", elo,
+                    (high - low) / 2, formatElo(low), formatElo(high)));
+        }
+        out.println(String.format(Locale.ROOT, "Time: %.1f s  Games/sec: %.2f", seconds, n / seconds));
+    }
+
+    /**
+     * Function that turns a mean score into an Elo difference.
+     *
+     * @param score the mean score, 1 for a win and 0.5 for a draw
+     * @return the Elo difference, infinite at a score of 0 or 1
+     */
+    static double elo(double score) {
+        if (score <= 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (score >= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    private static String formatElo(double elo) {
+        if (Double.isInfinite(elo)) {
+            return elo > 0 ? "+inf" : "-inf";
+        }
+        return String.format(Locale.ROOT, "%+.1f", elo);
+    }
+
+    /**
+     * Computer player that plays random legal moves for the first plies of the
+     * game, then hands over to an engine. The random choice only depends on the
+     * seed and the position, so both games of a pair get the same opening.
+     * Returning no move makes the game exit, which counts as a draw.
+     */
+    private static class RandomOpening implements ComputerPlayer {
+
+        private final ComputerPlayer engine;
+        private final int plies;
+        private final long seed;
+        private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+        RandomOpening(ComputerPlayer engine, int plies, long seed) {
+            this.engine = engine;
+            this.plies = plies;
+            this.seed = seed;
+        }
+
+        @Override
+        public int selectMove(Board board, int pliesLeft, PrintStream out) {
+            if (pliesLeft < 0) {
+                // Past the move limit only a check keeps the game going, stop it as a draw.
+                return Move.NONE;
+            }
+            int ply = BoxShogi.MAX_TURN - pliesLeft;
+            if (ply >= plies) {
+                return engine.selectMove(board, pliesLeft, out);
+            }
+            int count = MoveGenerator.generateLegalMoves(board, moves);
+            if (count == 0) {
+                return Move.NONE;
+            }
+            SplittableRandom random = new SplittableRandom(seed * 1000003L + ply);
+            return moves[random.nextInt(count)];
+        }
+    }
+}
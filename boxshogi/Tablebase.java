@@ -0,0 +1,398 @@
+package boxshogi;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Class to represent an endgame tablebase: the exact result of every position
+ * with both drives and a fixed set of other pieces.
+ *
+ * A table covers one material, the unpromoted types of the pieces besides the
+ * drives, such as "gp". Each of those pieces can be in either hand or on any
+ * square for either player, promoted or not, so captures and drops stay inside
+ * the table. A position is numbered by the side to move, the two drive squares
+ * and the state of each piece, and its entry is one byte:
+ *
+ * 0 means a draw, neither side can force checkmate;
+ * 1 to 254 mean mate in (value - 1) plies, won by the side to move when that
+ * number is odd and lost when it is even (0 plies: no legal move);
+ * 255 marks a number that is not a legal position.
+ *
+ * The file is a 16 byte header followed by the entries, and is memory-mapped,
+ * so opening a table costs nothing and lookups read the page they need. The
+ * move limit of the game is not part of the table.
+ */
+public final class Tablebase {
+
+    public static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    static final int MAGIC = 0x42535442; // "BSTB"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    /** Most pieces besides the drives, positions being indexed by int: four pieces would need over 1e11. */
+    static final int MAX_PIECES = 3;
+
+    static final byte DRAW = 0;
+    static final byte INVALID = (byte) 255;
+    static final int MAX_DISTANCE = 253;
+
+    /** Piece states besides the squares: in lower hand or in upper hand. */
+    private static final int IN_LOWER_HAND = 0;
+    private static final int IN_UPPER_HAND = 1;
+    private static final int ON_BOARD = 2;
+
+    private final int[] types;
+    private final int[] stateCounts;
+    private final long size;
+    private final ByteBuffer entries;
+
+    /**
+     * Constructor.
+     *
+     * @param types   the unpromoted types of the pieces besides the drives, sorted
+     * @param entries the entries, or null while the table is being generated
+     */
+    Tablebase(int[] types, ByteBuffer entries) {
+        this.types = types.clone();
+        this.stateCounts = new int[types.length];
+        long positions = 2L * Bitboards.SQUARE_COUNT * Bitboards.SQUARE_COUNT;
+        for (int i = 0; i < types.length; i++) {
+            stateCounts[i] = ON_BOARD + Bitboards.SQUARE_COUNT * 2 * (Piece.promotedType(types[i]) >= 0 ? 2 : 1);
+            positions *= stateCounts[i];
+        }
+        this.size = positions;
+        this.entries = entries;
+    }
+
+    /**
+     * Function that reads a material like "gp" or "NR".
+     *
+     * @param material the letters of the pieces besides the drives, in any case
+     * @return the sorted type indices
+     * @throws IllegalArgumentException if a letter is not a piece, a drive, or there are too many
+     */
+    public static int[] parseMaterial(String material) {
+        int[] types = new int[material.length()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = Piece.typeOf(material.charAt(i));
+            if (types[i] < 0 || types[i] == Piece.DRIVE) {
+                throw new IllegalArgumentException("Invalid tablebase piece: " + material.charAt(i));
+            }
+        }
+        if (types.length == 0 || types.length > MAX_PIECES) {
+            throw new IllegalArgumentException("A tablebase holds 1 to " + MAX_PIECES + " pieces besides the drives");
+        }
+        Arrays.sort(types);
+        return types;
+    }
+
+    /**
+     * Function that opens a table file.
+     *
+     * @param path the file written by TablebaseGenerator
+     * @return the table, mapped into memory
+     * @throws IOException If the file cannot be read or is not a table, IOException would be triggerd.
+     */
+    public static Tablebase open(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Read the whole header.
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a tablebase file: " + path);
+            }
+            int count = header.getInt();
+            if (count < 1 || count > MAX_PIECES) {
+                throw new IOException("Invalid tablebase file: " + path);
+            }
+            int[] types = new int[count];
+            for (int i = 0; i < count; i++) {
+                types[i] = header.get();
+            }
+            Tablebase shape = new Tablebase(types, null);
+            if (channel.size() != HEADER_SIZE + shape.size || shape.size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid tablebase file size: " + path);
+            }
+            MappedByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, shape.size);
+            return new Tablebase(types, entries);
+        }
+    }
+
+    /**
+     * Function that writes the header of a table file.
+     *
+     * @return the 16 header bytes
+     */
+    ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(types.length);
+        for (int type : types) {
+            header.put((byte) type);
+        }
+        header.position(HEADER_SIZE);
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Function that returns the material as letters.
+     *
+     * @return a String like "gp"
+     */
+    public String getMaterial() {
+        StringBuilder material = new StringBuilder();
+        for (int type : types) {
+            material.append(Piece.typeName(type));
+        }
+        return material.toString();
+    }
+
+    /**
+     * Number of entries, legal positions or not.
+     *
+     * @return the size of the table
+     */
+    public long size() {
+        return size;
+    }
+
+    /** <-------------------- Position numbers --------------------> **/
+
+    /**
+     * Function that numbers a position.
+     *
+     * @param board the position
+     * @return its number, or -1 if the table does not hold its material
+     */
+    public int indexOf(Board board) {
+        return indexOf(board, new int[types.length]);
+    }
+
+    /**
+     * Function that numbers a position, with a scratch array for the piece states.
+     *
+     * @param board  the position
+     * @param states an array of one int per piece, overwritten
+     * @return its number, or -1 if the table does not hold its material
+     */
+    int indexOf(Board board, int[] states) {
+        int lowerDrive = board.getDriveSquare(true);
+        int upperDrive = board.getDriveSquare(false);
+        if (lowerDrive < 0 || upperDrive < 0 || Integer.bitCount(board.getPieceBitboard(true, Piece.DRIVE)) != 1
+                || Integer.bitCount(board.getPieceBitboard(false, Piece.DRIVE)) != 1) {
+            return -1;
+        }
+        int assigned = 0;
+        for (int side = Bitboards.LOWER; side <= Bitboards.UPPER; side++) {
+            boolean isLower = side == Bitboards.LOWER;
+            PieceList pieces = board.getPieceList(isLower);
+            for (int index = 0; index < pieces.size(); index++) {
+                int type = pieces.type(index);
+                if (type == Piece.DRIVE) {
+                    continue;
+                }
+                int slot = freeSlot(Piece.baseType(type), assigned);
+                if (slot < 0) {
+                    return -1;
+                }
+                assigned |= 1 << slot;
+                int promotions = stateCounts[slot] > ON_BOARD + Bitboards.SQUARE_COUNT * 2 ? 2 : 1;
+                states[slot] = ON_BOARD + (pieces.square(index) * 2 + side) * promotions
+                        + (type != Piece.baseType(type) ? 1 : 0);
+            }
+            for (int type = Piece.NOTES; type <= Piece.PREVIEW; type++) {
+                for (int count = board.getHandCount(isLower, type); count > 0; count--) {
+                    int slot = freeSlot(type, assigned);
+                    if (slot < 0) {
+                        return -1;
+                    }
+                    assigned |= 1 << slot;
+                    states[slot] = isLower ? IN_LOWER_HAND : IN_UPPER_HAND;
+                }
+            }
+        }
+        if (assigned != (1 << types.length) - 1) {
+            return -1;
+        }
+        long index = board.getLowerTurn() ? 0 : 1;
+        index = (index * Bitboards.SQUARE_COUNT + lowerDrive) * Bitboards.SQUARE_COUNT + upperDrive;
+        for (int slot = 0; slot < types.length; slot++) {
+            index = index * stateCounts[slot] + states[slot];
+        }
+        return (int) index;
+    }
+
+    private int freeSlot(int type, int assigned) {
+        for (int slot = 0; slot < types.length; slot++) {
+            if (types[slot] == type && (assigned & (1 << slot)) == 0) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Function that sets up the position of a number on a board.
+     *
+     * @param index the position number
+     * @param board the board to reuse, cleared first
+     * @return false if the number is not a position, as when two pieces share a square
+     */
+    boolean setUp(int index, Board board) {
+        board.clear();
+        long rest = index;
+        int[] states = new int[types.length];
+        for (int slot = types.length - 1; slot >= 0; slot--) {
+            states[slot] = (int) (rest % stateCounts[slot]);
+            rest /= stateCounts[slot];
+        }
+        int upperDrive = (int) (rest % Bitboards.SQUARE_COUNT);
+        rest /= Bitboards.SQUARE_COUNT;
+        int lowerDrive = (int) (rest % Bitboards.SQUARE_COUNT);
+        boolean lowerTurn = rest / Bitboards.SQUARE_COUNT == 0;
+        if (lowerDrive == upperDrive) {
+            return false;
+        }
+        board.placePieceOnBoard(lowerDrive, Piece.of(Piece.DRIVE, true));
+        board.placePieceOnBoard(upperDrive, Piece.of(Piece.DRIVE, false));
+        for (int slot = 0; slot < types.length; slot++) {
+            int state = states[slot];
+            if (state == IN_LOWER_HAND || state == IN_UPPER_HAND) {
+                board.addToHand(state == IN_LOWER_HAND, types[slot]);
+                continue;
+            }
+            int promotions = stateCounts[slot] > ON_BOARD + Bitboards.SQUARE_COUNT * 2 ? 2 : 1;
+            int promoted = (state - ON_BOARD) % promotions;
+            int side = (state - ON_BOARD) / promotions % 2;
+            int sq = (state - ON_BOARD) / promotions / 2;
+            if (board.getPiece(sq) != null) {
+                return false;
+            }
+            int type = promoted == 1 ? Piece.promotedType(types[slot]) : types[slot];
+            board.placePieceOnBoard(sq, Piece.of(type, side == Bitboards.LOWER));
+        }
+        board.setLowerTurn(lowerTurn);
+        // The side that just moved cannot be left in check.
+        return !board.isInCheck(!lowerTurn);
+    }
+
+    /** <-------------------- Lookup --------------------> **/
+
+    /**
+     * Function that reads the entry of a position number.
+     *
+     * @param index a position number
+     * @return the entry, see the class comment
+     */
+    int entry(int index) {
+        return entries.get(index) & 0xff;
+    }
+
+    /**
+     * Function that looks a position up.
+     *
+     * @param board the position
+     * @return a search score for the side to move (Searcher.MATE minus the plies to
+     *         mate for a win, the opposite for a loss, 0 for a draw), or NOT_FOUND
+     *         if the position is not in the table
+     */
+    public int probe(Board board) {
+        int index = indexOf(board);
+        if (index < 0) {
+            return NOT_FOUND;
+        }
+        return scoreOf(entry(index));
+    }
+
+    /**
+     * Function that turns an entry into a search score.
+     *
+     * @param entry an entry
+     * @return the score for the side to move, or NOT_FOUND for an invalid position
+     */
+    static int scoreOf(int entry) {
+        if (entry == (INVALID & 0xff)) {
+            return NOT_FOUND;
+        }
+        if (entry == DRAW) {
+            return 0;
+        }
+        int plies = entry - 1;
+        return plies % 2 == 1 ? Searcher.MATE - plies : -Searcher.MATE + plies;
+    }
+
+    /**
+     * Function that finds the move keeping the best result: the fastest mate when
+     * winning, a draw when there is one, the slowest mate when losing.
+     *
+     * @param board the position, left unchanged
+     * @param moves a buffer of MoveGenerator.MAX_MOVES moves
+     * @return the move, or Move.NONE if the position is not in the table or has no move
+     */
+    public int bestMove(Board board, int[] moves) {
+        if (indexOf(board) < 0) {
+            return Move.NONE;
+        }
+        int count = MoveGenerator.generateLegalMoves(board, moves);
+        int best = Move.NONE;
+        int bestScore = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            board.makeMove(moves[i]);
+            int score = -probe(board);
+            board.unmakeMove();
+            if (score > bestScore) {
+                bestScore = score;
+                best = moves[i];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Function that prints the result of a position and the line both sides play.
+     *
+     * @param board the position, left unchanged
+     * @param out   where to print
+     */
+    public void printAnswer(Board board, PrintStream out) {
+        int score = probe(board);
+        if (score == NOT_FOUND) {
+            out.println("Position is not in the " + getMaterial() + " tablebase.");
+            return;
+        }
+        String mover = board.getLowerTurn() ? "lower" : "UPPER";
+        String other = board.getLowerTurn() ? "UPPER" : "lower";
+        if (score == 0) {
+            out.println("Draw.");
+        } else if (score > 0) {
+            int plies = Searcher.MATE - score;
+            out.println(mover + " player wins.  Checkmate in " + plies + (plies == 1 ? " ply." : " plies."));
+        } else {
+            out.println(other + " player wins.  Checkmate in " + (Searcher.MATE + score) + " plies.");
+        }
+        Board line = board.copy();
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        StringBuilder pv = new StringBuilder();
+        for (int ply = 0; ply < Searcher.MAX_PLY; ply++) {
+            int move = bestMove(line, moves);
+            if (move == Move.NONE) {
+                break;
+            }
+            if (pv.length() > 0) {
+                pv.append(", ");
+            }
+            Move.appendTo(pv, move);
+            line.makeMove(move);
+        }
+        out.println("Best line: " + (pv.length() > 0 ? pv : "none"));
+    }
+}
@@ -0,0 +1,247 @@
+package boxshogi;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that solves every position of a tablebase and writes it to a file.
+ *
+ * Solving works backwards from the end of the game, one distance at a time.
+ * The first pass marks the numbers that are not positions and the positions
+ * without a legal move, lost in 0 plies. Pass n then settles the positions
+ * whose result is a mate in exactly n plies: on odd passes a position is won
+ * if one of its moves reaches a position lost in n - 1 plies, on even passes
+ * it is lost if every move reaches a won position. Because odd distances are
+ * wins and even distances losses, each pass only looks for one of the two,
+ * and it only reads results of earlier passes, so the positions of a pass can
+ * be split between threads without locking. Solving stops after two passes in
+ * a row settle nothing; what is left is a draw.
+ *
+ * An entry is a byte, so solving also stops after pass Tablebase.MAX_DISTANCE.
+ * If the last passes still settled positions by then, longer mates may be
+ * left as draws, and a warning is printed.
+ *
+ * Moves come from MoveGenerator, so the table follows the rules of the game,
+ * including the preview drop checkmate ban.
+ */
+public class TablebaseGenerator {
+
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    private final Tablebase table;
+    private final int threads;
+    private final byte[] entries;
+
+    /**
+     * Constructor.
+     *
+     * @param material the pieces besides the drives, like "gp"
+     * @param threads  number of threads to solve with
+     * @throws IllegalArgumentException if the material is invalid or too large to hold in memory
+     */
+    public TablebaseGenerator(String material, int threads) {
+        this.table = new Tablebase(Tablebase.parseMaterial(material), null);
+        if (table.size() > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Tablebase " + material + " is too large: " + table.size() + " positions");
+        }
+        this.threads = Math.max(threads, 1);
+        this.entries = new byte[(int) table.size()];
+    }
+
+    /**
+     * Function that solves the table and writes it to a file.
+     *
+     * @param path where to write the table
+     * @param out  where to print the progress
+     * @throws IOException If the file cannot be written, IOException would be triggerd.
+     */
+    public void generate(String path, PrintStream out) throws IOException {
+        long start = System.nanoTime();
+        out.println("Tablebase " + table.getMaterial() + ": " + table.size() + " positions, " + threads + " threads");
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            long legal = table.size() - runPass(pool, 0);
+            out.println(String.format(Locale.ROOT, "Pass 0: %d legal positions, %d lost in 0 plies (%.1f s)", legal,
+                    count(1), seconds(start)));
+            int idlePasses = 0;
+            for (int distance = 1; distance <= Tablebase.MAX_DISTANCE && idlePasses < 2; distance++) {
+                long settled = runPass(pool, distance);
+                idlePasses = settled == 0 ? idlePasses + 1 : 0;
+                if (settled > 0) {
+                    out.println(String.format(Locale.ROOT, "Pass %d: %d %s in %d plies (%.1f s)", distance, settled,
+                            distance % 2 == 1 ? "won" : "lost", distance, seconds(start)));
+                }
+            }
+            if (idlePasses < 2) {
+                out.println("Warning: stopped at the limit of " + Tablebase.MAX_DISTANCE
+                        + " plies while positions were still being settled; longer mates are counted as draws.");
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        write(path);
+        long draws = 0;
+        long wins = 0;
+        long losses = 0;
+        for (byte entry : entries) {
+            if (entry == Tablebase.DRAW) {
+                draws++;
+            } else if (entry != Tablebase.INVALID) {
+                if ((entry & 0xff) % 2 == 0) {
+                    wins++;
+                } else {
+                    losses++;
+                }
+            }
+        }
+        out.println("Side to move wins: " + wins + "  Draws: " + draws + "  Losses: " + losses);
+        out.println(String.format(Locale.ROOT, "Wrote %s (%d bytes) in %.1f s", path,
+                Tablebase.HEADER_SIZE + entries.length, seconds(start)));
+    }
+
+    private static double seconds(long start) {
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private long count(int entry) {
+        long count = 0;
+        for (byte each : entries) {
+            if ((each & 0xff) == entry) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Function that runs one pass over the table, its chunks shared between the threads.
+     *
+     * @param pool     the threads
+     * @param distance the pass number, see the class comment
+     * @return how many entries the pass set
+     * @throws IOException If a thread fails, IOException would be triggerd.
+     */
+    private long runPass(ExecutorService pool, int distance) throws IOException {
+        AtomicInteger nextChunk = new AtomicInteger();
+        AtomicLong settled = new AtomicLong();
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(pool.submit(() -> {
+                Worker worker = new Worker();
+                long mine = 0;
+                for (long first = (long) nextChunk.getAndIncrement() * CHUNK_SIZE; first < entries.length;
+                        first = (long) nextChunk.getAndIncrement() * CHUNK_SIZE) {
+                    int last = (int) Math.min(entries.length, first + CHUNK_SIZE);
+                    for (int index = (int) first; index < last; index++) {
+                        if (distance == 0 ? worker.initialize(index) : worker.settle(index, distance)) {
+                            mine++;
+                        }
+                    }
+                }
+                settled.addAndGet(mine);
+            }));
+        }
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Tablebase pass " + distance + " failed", e.getCause());
+            }
+        }
+        return settled.get();
+    }
+
+    private void write(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = table.header();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            ByteBuffer body = ByteBuffer.wrap(entries);
+            while (body.hasRemaining()) {
+                channel.write(body);
+            }
+        }
+    }
+
+    /**
+     * The board, move buffer and scratch space of one thread.
+     */
+    private final class Worker {
+
+        private final Board board = new Board(true);
+        private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+        private final int[] states = new int[Tablebase.MAX_PIECES];
+
+        /**
+         * Function that marks a number that is not a position, or a position without a legal move.
+         *
+         * @param index the position number
+         * @return true if the position is lost in 0 plies
+         */
+        boolean initialize(int index) {
+            if (!table.setUp(index, board)) {
+                entries[index] = Tablebase.INVALID;
+                return false;
+            }
+            if (MoveGenerator.generateLegalMoves(board, moves) == 0) {
+                entries[index] = 1;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Function that checks whether an unsettled position is a mate in exactly distance plies.
+         *
+         * @param index    the position number
+         * @param distance the pass number
+         * @return true if the position was settled
+         */
+        boolean settle(int index, int distance) {
+            if (entries[index] != Tablebase.DRAW) {
+                return false;
+            }
+            table.setUp(index, board);
+            int count = MoveGenerator.generateLegalMoves(board, moves);
+            boolean win = distance % 2 == 1;
+            boolean settled = !win;
+            for (int i = 0; i < count; i++) {
+                board.makeMove(moves[i]);
+                int child = entries[table.indexOf(board, states)] & 0xff;
+                board.unmakeMove();
+                if (win && child == distance) {
+                    // A move reaches a position lost in distance - 1 plies.
+                    settled = true;
+                    break;
+                }
+                if (!win && (child == 0 || child > distance || child % 2 == 1)) {
+                    // A move reaches a position not yet known to be won.
+                    settled = false;
+                    break;
+                }
+            }
+            if (settled) {
+                entries[index] = (byte) (distance + 1);
+            }
+            return settled;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package boxshogi;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Locale;
+
+/**
+ * Class holding the transposition table search threads share.
+ *
+ * The entries live off the Java heap, in direct byte buffers of at most 1 GB
+ * each, so even a table of many gigabytes is one object to the garbage
+ * collector and adds nothing to its pauses. The table is made of buckets of
+ * four entries, 64 bytes, so a lookup reads a single cache line.
+ *
+ * Each entry is two longs: the position key XOR the data, and the data. Threads
+ * read and write entries without locks. A reader only accepts an entry when
+ * XOR-ing its two halves gives back the key it looks for, so an entry torn by
+ * two concurrent writers reads as a miss instead of as wrong data.
+ *
+ * The data packs the best move (bits 0-15), the score offset to be positive
+ * (bits 16-35), the depth (bits 36-43), the bound type (bits 44-45) and the
+ * generation of the search that stored it (bits 46-53). A store goes to the
+ * entry of the same position if the bucket has one, unless that entry is a
+ * deeper result of the same search and the new one is not exact. Otherwise
+ * it replaces the least valuable entry: the shallowest, counting entries of
+ * older searches as shallower the older they are, so deep results survive
+ * until they are stale.
+ *
+ * The table keeps no statistics itself, so threads share nothing but the
+ * entries: each searcher counts its own lookups and stores in a Stats, and the
+ * counts of all threads are added up when they are printed.
+ */
+public class TranspositionTable {
+
+    public static final int BOUND_UPPER = 1;
+    public static final int BOUND_LOWER = 2;
+    public static final int BOUND_EXACT = 3;
+
+    private static final int SCORE_SHIFT = 16;
+    private static final int SCORE_OFFSET = 1 << 19;
+    private static final int DEPTH_SHIFT = 36;
+    private static final int BOUND_SHIFT = 44;
+    private static final int GENERATION_SHIFT = 46;
+
+    private static final int ENTRY_BYTES = 16;
+    private static final int BUCKET_ENTRIES = 4;
+    private static final int BUCKET_BYTES = ENTRY_BYTES * BUCKET_ENTRIES;
+    private static final int BUCKET_SHIFT = 6;
+    private static final int CHUNK_SHIFT = 30;
+    private static final long MAX_BUCKETS = 1L << 40 >>> BUCKET_SHIFT;
+
+    /** How many depths an entry loses for each search it is older than the current one. */
+    private static final int AGE_PENALTY = 8;
+
+    private final ByteBuffer[] chunks;
+    private final long bucketMask;
+    private final int chunkBucketShift;
+    private final int chunkBucketMask;
+    private volatile int generation;
+
+    /**
+     * Constructor.
+     *
+     * @param megabytes the size of the table, rounded down to a power of two buckets
+     */
+    public TranspositionTable(long megabytes) {
+        long wanted = Math.max(megabytes, 1) * 1024 * 1024 / BUCKET_BYTES;
+        long buckets = Long.highestOneBit(Math.min(wanted, MAX_BUCKETS));
+        long bytes = buckets * BUCKET_BYTES;
+        int chunkBytes = (int) Math.min(bytes, 1L << CHUNK_SHIFT);
+        this.chunks = new ByteBuffer[(int) (bytes / chunkBytes)];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(chunkBytes).order(ByteOrder.nativeOrder());
+        }
+        this.bucketMask = buckets - 1;
+        this.chunkBucketShift = Integer.numberOfTrailingZeros(chunkBytes) - BUCKET_SHIFT;
+        this.chunkBucketMask = (1 << chunkBucketShift) - 1;
+    }
+
+    /**
+     * Function that starts a new search, so the entries of earlier searches age.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xff;
+    }
+
+    /**
+     * Function that looks a position up.
+     *
+     * @param key the Zobrist key of the position
+     * @return the data stored for the position, or 0 if there is none
+     */
+    public long probe(long key) {
+        long bucket = key & bucketMask;
+        ByteBuffer chunk = chunks[(int) (bucket >>> chunkBucketShift)];
+        int offset = ((int) bucket & chunkBucketMask) << BUCKET_SHIFT;
+        for (int i = 0; i < BUCKET_ENTRIES; i++, offset += ENTRY_BYTES) {
+            long data = chunk.getLong(offset + 8);
+            if ((chunk.getLong(offset) ^ data) == key && data != 0) {
+                return data;
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * Function that stores the result of a search, over the entry of the same
+     * position or the least valuable entry of its bucket.
+     *
+     * @param key   the Zobrist key of the position
+     * @param move  the best move found, or Move.NONE
+     * @param score the score, mate scores relative to the position
+     * @param depth the depth searched
+     * @param bound BOUND_UPPER, BOUND_LOWER or BOUND_EXACT
+     * @return true if the store pushed out the entry of another position stored by this search
+     */
+    public boolean store(long key, int move, int score, int depth, int bound) {
+        int currentGeneration = generation;
+        long bucket = key & bucketMask;
+        ByteBuffer chunk = chunks[(int) (bucket >>> chunkBucketShift)];
+        int first = ((int) bucket & chunkBucketMask) << BUCKET_SHIFT;
+        int target = first;
+        int lowestValue = Integer.MAX_VALUE;
+        for (int offset = first; offset < first + BUCKET_BYTES; offset += ENTRY_BYTES) {
+            long old = chunk.getLong(offset + 8);
+            if (old == 0 || (chunk.getLong(offset) ^ old) == key) {
+                if (old != 0 && generation(old) == currentGeneration && depth(old) > depth
+                        && bound != BOUND_EXACT) {
+                    // Keep the deeper result this search already has for the position.
+                    return false;
+                }
+                target = offset;
+                lowestValue = Integer.MIN_VALUE;
+                break;
+            }
+            int age = (currentGeneration - generation(old)) & 0xff;
+            int value = depth(old) - AGE_PENALTY * age;
+            if (value < lowestValue) {
+                lowestValue = value;
+                target = offset;
+            }
+        }
+        // Replacing another position's entry of this very search loses one of its results.
+        boolean evicted = lowestValue != Integer.MIN_VALUE
+                && generation(chunk.getLong(target + 8)) == currentGeneration;
+        long data = (move & 0xffffL) | ((long) (score + SCORE_OFFSET) << SCORE_SHIFT)
+                | ((long) depth << DEPTH_SHIFT) | ((long) bound << BOUND_SHIFT)
+                | ((long) currentGeneration << GENERATION_SHIFT);
+        chunk.putLong(target, key ^ data);
+        chunk.putLong(target + 8, data);
+        return evicted;
+    }
+
+    public void clear() {
+        for (ByteBuffer chunk : chunks) {
+            for (int offset = 0; offset < chunk.capacity(); offset += 8) {
+                chunk.putLong(offset, 0L);
+            }
+        }
+    }
+
+    /**
+     * Size of the table.
+     *
+     * @return the number of bytes the entries take
+     */
+    public long getBytes() {
+        return (bucketMask + 1) * BUCKET_BYTES;
+    }
+
+    /**
+     * Function that writes the statistics of the current search: the share of
+     * entries holding one of its results, counted over the first thousand
+     * buckets; the share of lookups that found their position; and the share of
+     * stores that pushed out another of its results.
+     *
+     * @param out   the builder to append to
+     * @param stats the lookups and stores of every thread of the search, added up
+     */
+    public void appendStats(StringBuilder out, Stats stats) {
+        long sampled = Math.min(bucketMask + 1, 1000);
+        long used = 0;
+        int currentGeneration = generation;
+        for (long bucket = 0; bucket < sampled; bucket++) {
+            ByteBuffer chunk = chunks[(int) (bucket >>> chunkBucketShift)];
+            int first = ((int) bucket & chunkBucketMask) << BUCKET_SHIFT;
+            for (int offset = first; offset < first + BUCKET_BYTES; offset += ENTRY_BYTES) {
+                long data = chunk.getLong(offset + 8);
+                if (data != 0 && generation(data) == currentGeneration) {
+                    used++;
+                }
+            }
+        }
+        out.append(String.format(Locale.ROOT,
+                "hash %d MB occupancy %.1f%% probes %d hit rate %.1f%% stores %d eviction rate %.1f%%",
+                getBytes() >> 20, 100.0 * used / (sampled * BUCKET_ENTRIES), stats.probes,
+                stats.probes > 0 ? 100.0 * stats.hits / stats.probes : 0.0, stats.stores,
+                stats.stores > 0 ? 100.0 * stats.evictions / stats.stores : 0.0));
+    }
+
+    /**
+     * Counts of the lookups and stores of one search thread, kept by the thread
+     * alone so counting never touches memory another thread writes.
+     */
+    public static final class Stats {
+
+        long probes;
+        long hits;
+        long stores;
+        /** Stores that pushed out the entry of another position stored by the same search. */
+        long evictions;
+
+        /**
+         * Function that adds the counts of another thread.
+         *
+         * @param other the counts to add
+         */
+        public void add(Stats other) {
+            probes += other.probes;
+            hits += other.hits;
+            stores += other.stores;
+            evictions += other.evictions;
+        }
+    }
+
+    public static int move(long data) {
+        return (int) (data & 0xffff);
+    }
+
+    public static int score(long data) {
+        return (int) ((data >>> SCORE_SHIFT) & 0xfffff) - SCORE_OFFSET;
+    }
+
+    public static int depth(long data) {
+        return (int) ((data >>> DEPTH_SHIFT) & 0xff);
+    }
+
+    public static int bound(long data) {
+        return (int) ((data >>> BOUND_SHIFT) & 0x3);
+    }
+
+    static int generation(long data) {
+        return (int) ((data >>> GENERATION_SHIFT) & 0xff);
+    }
+}
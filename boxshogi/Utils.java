@@ -1,6 +1,5 @@
 package boxshogi;
 
-import java.io.*;
 import java.util.*;
 
 public class Utils {
@@ -64,28 +63,21 @@ public class Utils {
         }
     }
 
+    /**
+     * Function that reads a whole game file, moves included.
+     *
+     * File mode streams the moves from a GameFile instead, this is for callers
+     * that want every move at once.
+     *
+     * @param path the path of the game file
+     * @return the pieces, captures and moves of the file
+     * @throws Exception If the file cannot be read or is malformed, Exception would be triggerd.
+     */
     public static TestCase parseTestCase(String path) throws Exception {
-        BufferedReader br = new BufferedReader(new FileReader(path));
-        String line = br.readLine().trim();
-        List<InitialPosition> initialPieces = new ArrayList<InitialPosition>();
-        while (!line.equals("")) {
-            String[] lineParts = line.split(" ");
-            initialPieces.add(new InitialPosition(lineParts[0], lineParts[1]));
-            line = br.readLine().trim();
+        try (GameFile gameFile = new GameFile(path)) {
+            TestCase header = gameFile.getHeader();
+            return new TestCase(header.initialPieces, header.upperCaptures, header.lowerCaptures,
+                    gameFile.readAllMoves());
         }
-        line = br.readLine().trim();
-        List<String> upperCaptures = Arrays.asList(line.substring(1, line.length() - 1).split(" "));
-        line = br.readLine().trim();
-        List<String> lowerCaptures = Arrays.asList(line.substring(1, line.length() - 1).split(" "));
-        line = br.readLine().trim();
-        line = br.readLine().trim();
-        List<String> moves = new ArrayList<String>();
-        while (line != null) {
-            line = line.trim();
-            moves.add(line);
-            line = br.readLine();
-        }
-
-        return new TestCase(initialPieces, upperCaptures, lowerCaptures, moves);
     }
 }
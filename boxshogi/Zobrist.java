@@ -0,0 +1,64 @@
+package boxshogi;
+
+import java.util.SplittableRandom;
+
+/**
+ * Class holding the random keys used to hash Box Shogi positions.
+ *
+ * A position key is the XOR of one key per piece on the board (by side, type
+ * and square, so promoted pieces hash differently), one key per hand entry
+ * (by side, type and how many of that type are held) and the side key when
+ * UPPER is to move. Board keeps its key up to date on every change.
+ */
+public final class Zobrist {
+
+    /** Hand counts at or above this share the last key. */
+    public static final int MAX_HAND_COUNT = 32;
+
+    private static final long SEED = 0x5eed_b0c5_5b09_1000L;
+
+    private static final long[][][] PIECE_KEYS = new long[2][Piece.TYPE_COUNT][Bitboards.SQUARE_COUNT];
+    private static final long[][][] HAND_KEYS = new long[2][Piece.PREVIEW + 1][MAX_HAND_COUNT];
+    private static final long UPPER_TO_MOVE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int side = Bitboards.LOWER; side <= Bitboards.UPPER; side++) {
+            for (int type = 0; type < Piece.TYPE_COUNT; type++) {
+                for (int sq = 0; sq < Bitboards.SQUARE_COUNT; sq++) {
+                    PIECE_KEYS[side][type][sq] = random.nextLong();
+                }
+            }
+            for (int type = 0; type <= Piece.PREVIEW; type++) {
+                // Holding none of a type does not change the key.
+                for (int count = 1; count < MAX_HAND_COUNT; count++) {
+                    HAND_KEYS[side][type][count] = random.nextLong();
+                }
+            }
+        }
+        UPPER_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    public static long piece(int side, int type, int sq) {
+        return PIECE_KEYS[side][type][sq];
+    }
+
+    /**
+     * Function that returns the key of holding a number of pieces of one type.
+     *
+     * @param side  the side holding the pieces
+     * @param type  an unpromoted type index
+     * @param count how many pieces of the type are held
+     * @return the key, 0 when none is held
+     */
+    public static long hand(int side, int type, int count) {
+        return HAND_KEYS[side][type][Math.min(count, MAX_HAND_COUNT - 1)];
+    }
+
+    public static long upperToMove() {
+        return UPPER_TO_MOVE;
+    }
+}